@@ -8,13 +8,16 @@ public class Barracks extends Unit {
         super(uc);
     }
 
+    // Spawn a soldier if the base has decided that's what we need next.
+    // Otherwise, or if we can't, wait until something changes.
     void play() {
+        if (!hasProductionChanged())
+            return;
         if (shouldCreateUnitRatio(UnitType.SOLDIER)) {
-            if (spawn(UnitType.SOLDIER)) {
-                uc.write(SOLDIER_INDEX, uc.read(SOLDIER_INDEX) + 1);
-                uc.write(SOLDIERS_BUILT, uc.read(SOLDIERS_BUILT) + 1);
-                incrementBuildNum();
-            }
+            if (spawnWithTicket(UnitType.SOLDIER))
+                return;
+            reportIfBoxedIn(UnitType.SOLDIER);
         }
+        waitForProduction();
     }
 }
@@ -10,134 +10,125 @@ public class Base extends Unit {
     // Last turn in which we built a fumigator.
     int fumigatorTurn = 0;
 
-    // TODO: These methods which manipulate the shared array can behave
-    // poorly if we run out of energy. We need some way to make sure we leave
-    // the array in a sane state; perhaps by exiting gracefully when at
-    // 99% energy, or by optimizing the usage of this array.
+    // The journals in the shared array are ring buffers, so expiring old
+    // entries only moves the head forward and never copies anything. If we
+    // run low on energy part way through, we write the head as far as we got,
+    // and the next round picks up where we left off.
 
-    // Delete any infected squares from the shared array that are two or
-    // more rounds old.
-    protected void deleteInfected() {
-        int index = INFECTED_SQUARES_START;
-        int val = uc.read(index);
-        while (val != -1) {
-            if (val == -2) {
-                // do nothing
-            } else if (val <= uc.getRound() - 2) {
-                uc.write(index, -2);
-                uc.write(index + 1, -2);
-                uc.write(index + 2, -2);
-            }
-            index += 3;
-            val = uc.read(index);
-            if (index >= FUMIGATED_SQUARES_START - 3)
+    // Expire any entries of the given journal that are two or more rounds
+    // old by moving its head past them. If unflag is set, the infected flag
+    // of each expired square is cleared as well, unless a newer entry for
+    // the square has set it since.
+    protected void expireJournal(int start, int headIndex, int tailIndex, boolean unflag) {
+        int head = uc.read(headIndex);
+        int tail = uc.read(tailIndex);
+        int oldHead = head;
+        int baseX = baseLocation().x;
+        int baseY = baseLocation().y;
+        while (head < tail && canContinueJob()) {
+            int entry = uc.read(journalSlot(start, head));
+            if (decodeEntryRound(entry) > uc.getRound() - 2)
                 break;
+            if (unflag)
+                unflagInfected(decodeEntryX(entry, baseX), decodeEntryY(entry, baseY),
+                        decodeEntryRound(entry));
+            head++;
         }
+        if (head != oldHead)
+            uc.write(headIndex, head);
     }
 
+    // Expire any infected squares that are two or more rounds old.
+    protected void expireInfected() {
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        expireJournal(INFECTED_SQUARES_START, INFECTED_SQUARES_HEAD, INFECTED_SQUARES_TAIL, true);
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.EXPIRE_INFECTED, profile);
+    }
 
-    protected void compressInfected() {
-        int index = INFECTED_SQUARES_START;
-        int val = uc.read(index);
-        while (val != -1) {
-            if (val != -2)
-                break;
-            index += 3;
-            val = uc.read(index);
-        }
-        int initIndex = INFECTED_SQUARES_START;
-        while (uc.read(index) != -1) {
-            uc.write(initIndex, uc.read(index));
-            uc.write(initIndex+1, uc.read(index+1));
-            uc.write(initIndex+2, uc.read(index+2));
+    // Expire any fumigated squares that are two or more rounds old.
+    protected void expireFumigated() {
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        expireJournal(FUMIGATED_SQUARES_START, FUMIGATED_SQUARES_HEAD, FUMIGATED_SQUARES_TAIL, false);
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.EXPIRE_FUMIGATED, profile);
+    }
 
-            index += 3;
-            initIndex +=3;
-            if (initIndex > 1000000)
-                break;
+    void runTask(int task) {
+        if (task == TASK_BUILD) {
+            playBuild();
+        }
+        else if (task == TASK_HOUSEKEEPING) {
+            // As one of the units that must always exist, and has little
+            // else it needs to calculate, we assign the Base responsibility
+            // over maintaining the shared array.
+            expireInfected();
+            expireFumigated();
         }
-        uc.write(index, -1);
-        uc.write(INFECTED_SQUARES_END, index);
     }
 
-    // Delete any fumigated squares from the shared array that are two or
-    // more rounds old.
-    protected void deleteFumigated() {
-        int index = FUMIGATED_SQUARES_START;
-        int val = uc.read(index);
-        while (val != -1) {
-            if (val == -2) {
-                // do nothing
-            } else if (val <= uc.getRound() - 2) {
-                uc.write(index, -2);
-                uc.write(index + 1, -2);
-                uc.write(index + 2, -2);
-            }
-            index += 3;
-            val = uc.read(index);
-            if (index >= 1000000)
-                break;
-        }
+    // Smooth a rolling value, giving the newest sample a quarter of the
+    // weight.
+    private int smooth(int old, int sample) {
+        return (3 * old + sample + 2) / 4;
     }
 
-    // Compress the fumigated squares portion of the shared array.
-    protected void compressFumigated() {
-        int index = FUMIGATED_SQUARES_START;
-        int val = uc.read(index);
-        while (val != -1) {
-            if (val != -2)
-                break;
-            index += 3;
-            val = uc.read(index);
-        }
-        int initIndex = FUMIGATED_SQUARES_START;
-        while (uc.read(index) != -1) {
-            uc.write(initIndex, uc.read(index));
-            uc.write(initIndex+1, uc.read(index+1));
-            uc.write(initIndex+2, uc.read(index+2));
+    // Every PRODUCTION_INTERVAL rounds, fold what units have reported since
+    // last time into our pressures and set new build ratios from them. Every
+    // round, publish which unit should be built next.
+    protected void updateProduction() {
+        int round = uc.getRound();
+        if (round % PRODUCTION_INTERVAL == 0) {
+            int zombiePressure = smooth(readHeader(ZOMBIE_PRESSURE), readHeaderFresh(ZOMBIES_SIGHTED));
+            int enemyPressure = smooth(readHeader(ENEMY_PRESSURE), readHeaderFresh(ENEMIES_SIGHTED));
+            // The number of infected squares still in the journal stands in
+            // for how much of the map needs fumigating.
+            int infected = uc.read(INFECTED_SQUARES_TAIL) - uc.read(INFECTED_SQUARES_HEAD);
+            int infectionPressure = smooth(readHeader(INFECTION_PRESSURE), infected);
+            int incomeRate = smooth(readHeader(INCOME_RATE), readHeaderFresh(FOOD_DEPOSITS));
+            writeHeader(ZOMBIE_PRESSURE, zombiePressure);
+            writeHeader(ENEMY_PRESSURE, enemyPressure);
+            writeHeader(INFECTION_PRESSURE, infectionPressure);
+            writeHeader(INCOME_RATE, incomeRate);
+            writeHeader(ZOMBIES_SIGHTED, 0);
+            writeHeader(ENEMIES_SIGHTED, 0);
+            writeHeader(FOOD_DEPOSITS, 0);
 
-            index += 3;
-            initIndex +=3;
-            if (initIndex > 1000000)
-                break;
+            // Workers matter most early on, and for as long as no food is
+            // coming in, since only more workers can start it coming. Late
+            // in the game, once it is, we want fewer of them.
+            int workerWeight = workerRatio;
+            if (round < 300 || incomeRate == 0)
+                workerWeight++;
+            else if (round > 1000)
+                workerWeight = 1;
+            // More soldiers the more zombies and enemy soldiers we see, and
+            // more fumigators the more squares are infected.
+            int soldierWeight = soldierRatio / 2 + Math.min(soldierRatio, zombiePressure + 2 * enemyPressure);
+            int fumigatorWeight = fumigatorRatio - 1 + Math.min(2 * fumigatorRatio, infectionPressure / 16);
+            writeHeader(WORKER_WEIGHT, workerWeight);
+            writeHeader(SOLDIER_WEIGHT, soldierWeight);
+            writeHeader(FUMIGATOR_WEIGHT, Math.max(1, fumigatorWeight));
         }
-        uc.write(index, -1);
-        uc.write(FUMIGATED_SQUARES_END, index);
+        publishBuildDecision();
     }
 
-    void play() {
-        // Every 100 turns, we should build an additional fumigator.
-        if ((uc.getRound() % 100) == 0) {
-            targetFumigator++;
-        }
+    // Adjust our targets as the game goes on, and build any units we need.
+    protected void playBuild() {
+        updateProduction();
+        skipUnreadyBuildSteps();
         // Every 100 turns, we increase the 'safe' area around the base
         // by 3 units.
         if ((uc.getRound() % 100) == 0) {
-            uc.write(SAFE_RADIUS, uc.read(SAFE_RADIUS) + 3);
+            writeHeader(SAFE_RADIUS, readHeaderFresh(SAFE_RADIUS) + 3);
         }
         // Create an Essential Worker, if it is appropriate to do so.
         if (shouldCreateUnitRatio(UnitType.ESSENTIAL_WORKER)) {
-            if (spawn(UnitType.ESSENTIAL_WORKER)) {
-                uc.write(WORKER_INDEX, uc.read(WORKER_INDEX) + 1);
-                uc.write(WORKERS_BUILT, uc.read(WORKERS_BUILT) + 1);
-                incrementBuildNum();
-            }
+            if (!spawnWithTicket(UnitType.ESSENTIAL_WORKER))
+                reportIfBoxedIn(UnitType.ESSENTIAL_WORKER);
         }
         // Create a Fumigator, if it is appropriate to do so.
         if (shouldCreateUnitRatio(UnitType.FUMIGATOR)) {
-            if (spawn(UnitType.FUMIGATOR)) {
-                uc.write(FUMIGATOR_INDEX, uc.read(FUMIGATOR_INDEX) + 1);
-                uc.write(FUMIGATORS_BUILT, uc.read(FUMIGATORS_BUILT) + 1);
-                incrementBuildNum();
-            }
+            if (!spawnWithTicket(UnitType.FUMIGATOR))
+                reportIfBoxedIn(UnitType.FUMIGATOR);
         }
-
-        // As one of the units that must always exist, and has little
-        // else it needs to calculate, we assign the Base responsibility
-        // over maintaining the shared array.
-        deleteInfected();
-        compressInfected();
-        deleteFumigated();
-        compressFumigated();
     }
 }
@@ -0,0 +1,68 @@
+package ratioplayer;
+
+/**
+ * Build orders, encoded as one int per step so that an order is a plain
+ * int[] which can be swapped out without touching the code that follows it.
+ *
+ * Each step names what to build by its counter in the shared array (the
+ * *_INDEX constants in Unit), which covers farms as well as UnitTypes. A step
+ * may also carry a condition. Until the condition holds, the step either
+ * waits, holding up the rest of the order, or, if it is marked skippable, is
+ * passed over by the base. Bits of a step, from the lowest:
+ *
+ *   0-3    the counter of what to build
+ *   4-7    the condition, one of the COND_* constants
+ *   8-11   for COND_AFTER_BUILT, the counter the condition looks at
+ *   12     set if the step is skipped, rather than waited for, when its
+ *          condition doesn't hold
+ *   16-30  the condition's value
+ */
+public class BuildOrder {
+
+    // The step can always be built.
+    static final int COND_ALWAYS = 0;
+    // Once we have built at least value units of another counter.
+    static final int COND_AFTER_BUILT = 1;
+    // Once some unit has seen at least value zombies at once.
+    static final int COND_ZOMBIES_SEEN = 2;
+    // From round value on.
+    static final int COND_AFTER_ROUND = 3;
+
+    static final int KIND_MASK = 0xF;
+    static final int SKIP_FLAG = 1 << 12;
+
+    // A step which can always be built.
+    static int step(int kind) {
+        return kind;
+    }
+
+    // A step which waits until its condition holds.
+    static int step(int kind, int condition, int condKind, int value) {
+        return kind | condition << 4 | condKind << 8 | value << 16;
+    }
+
+    // A step which is skipped if its condition doesn't hold when we reach it.
+    static int optionalStep(int kind, int condition, int condKind, int value) {
+        return step(kind, condition, condKind, value) | SKIP_FLAG;
+    }
+
+    static int kind(int step) {
+        return step & KIND_MASK;
+    }
+
+    static int condition(int step) {
+        return (step >>> 4) & 0xF;
+    }
+
+    static int condKind(int step) {
+        return (step >>> 8) & KIND_MASK;
+    }
+
+    static boolean isSkippable(int step) {
+        return (step & SKIP_FLAG) != 0;
+    }
+
+    static int value(int step) {
+        return step >>> 16;
+    }
+}
@@ -0,0 +1,52 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+/**
+ * Fixed orderings of the directions, shared by every unit. Rather than
+ * shuffling a list of directions each time it wants to try them in a random
+ * order, a unit picks one of NUM_ORDERS orderings computed once when the
+ * class is loaded. The orderings must never be modified.
+ */
+public class DirectionOrders {
+
+    static final int NUM_ORDERS = 64;
+
+    // All nine directions, including ZERO, in their usual order.
+    static final Direction[] ALL_DIRECTIONS = Direction.values();
+
+    // Random orderings of the eight directions other than ZERO.
+    static final Direction[][] ADJACENT = new Direction[NUM_ORDERS][];
+
+    // The offset of each direction, indexed by its ordinal.
+    static final int[] DX = new int[ALL_DIRECTIONS.length];
+    static final int[] DY = new int[ALL_DIRECTIONS.length];
+
+    static {
+        Location origin = new Location(0, 0);
+        for (Direction dir : ALL_DIRECTIONS) {
+            Location loc = origin.add(dir);
+            DX[dir.ordinal()] = loc.x;
+            DY[dir.ordinal()] = loc.y;
+        }
+
+        Direction[] adjacent = new Direction[ALL_DIRECTIONS.length - 1];
+        int n = 0;
+        for (Direction dir : ALL_DIRECTIONS) {
+            if (dir != Direction.ZERO)
+                adjacent[n++] = dir;
+        }
+        // A fixed seed, so that every unit (and every run) has the same
+        // orderings.
+        Rng rng = new Rng(0, 0);
+        for (int order = 0; order < NUM_ORDERS; order++) {
+            for (int i = n - 1; i > 0; i--) {
+                int rand = rng.nextInt(i + 1);
+                Direction tmp = adjacent[i];
+                adjacent[i] = adjacent[rand];
+                adjacent[rand] = tmp;
+            }
+            ADJACENT[order] = adjacent.clone();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+/**
+ * Picks random directions weighted by how far they turn away from a given
+ * heading, for biased random walks. A weight profile gives the weight of the
+ * heading itself, then of turning one, two and three steps either way, and
+ * last of turning around. The sampler keeps the cumulative weights of the
+ * eight turns, so it never allocates; a caller which has tried a direction
+ * and found it no good can exclude it, and the remaining directions keep
+ * their relative weights.
+ *
+ * Turns are numbered clockwise from the heading, from 0 to 7, and passed
+ * around as a bitmask of turns to exclude. A sampler holds no state beyond
+ * its profile, so a single one can be shared by every unit using it.
+ */
+public class DirectionSampler {
+
+    static final int NUM_TURNS = 8;
+
+    // Weight profiles, from the heading round to its opposite.
+    static final int[] TOWARDS_PROFILE = {10, 6, 3, 2, 1};
+    static final int[] UNIFORM_PROFILE = {1, 1, 1, 1, 1};
+
+    // Heads towards a target, but wanders enough to get around units in
+    // the way.
+    static final DirectionSampler TOWARDS = new DirectionSampler(TOWARDS_PROFILE);
+
+    // The direction reached by turning each direction clockwise a number of
+    // steps, indexed by the direction's ordinal and then the turn. ZERO
+    // turns like NORTH, so that it still gives a direction to move in.
+    static final Direction[][] TURNED = new Direction[Direction.values().length][NUM_TURNS];
+
+    static {
+        for (Direction dir : Direction.values()) {
+            Direction turned = dir == Direction.ZERO ? Direction.NORTH : dir;
+            for (int turn = 0; turn < NUM_TURNS; turn++) {
+                TURNED[dir.ordinal()][turn] = turned;
+                turned = turned.rotateRight();
+            }
+        }
+    }
+
+    // The total weight of turns 0 to i, for each turn i.
+    final int[] cumulative = new int[NUM_TURNS];
+
+    DirectionSampler(int[] profile) {
+        int total = 0;
+        for (int turn = 0; turn < NUM_TURNS; turn++) {
+            total += profile[Math.min(turn, NUM_TURNS - turn)];
+            cumulative[turn] = total;
+        }
+    }
+
+    // The weight of the given turn.
+    int weight(int turn) {
+        return turn == 0 ? cumulative[0] : cumulative[turn] - cumulative[turn - 1];
+    }
+
+    // Pick a turn at random, other than those in excluded. Returns -1 if
+    // every turn is excluded.
+    int sampleTurn(int excluded, Rng rng) {
+        int total = cumulative[NUM_TURNS - 1];
+        if (excluded != 0) {
+            for (int turn = 0; turn < NUM_TURNS; turn++) {
+                if ((excluded & (1 << turn)) != 0)
+                    total -= weight(turn);
+            }
+        }
+        if (total <= 0)
+            return -1;
+
+        int r = rng.nextInt(total);
+        for (int turn = 0; turn < NUM_TURNS; turn++) {
+            if ((excluded & (1 << turn)) != 0)
+                continue;
+            r -= weight(turn);
+            if (r < 0)
+                return turn;
+        }
+        return -1;
+    }
+
+    // The direction reached by turning clockwise from the heading.
+    static Direction turn(Direction heading, int turn) {
+        return TURNED[heading.ordinal()][turn];
+    }
+}
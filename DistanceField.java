@@ -0,0 +1,131 @@
+package ratioplayer;
+
+/**
+ * The number of steps from every square near a target to that target,
+ * computed by a breadth first search outwards from the target. The search
+ * can be run a few squares at a time, so that it can be spread over several
+ * turns without going over our energy budget.
+ *
+ * Squares are indexed by their coordinates modulo SIZE. We never search more
+ * than MAX_DIST steps from the target, so no two squares we reach share an
+ * index.
+ */
+public class DistanceField {
+
+    static final int SIZE = 128;
+    static final int MAX_DIST = 63;
+    // Distance recorded for a square we found to be blocked.
+    static final int BLOCKED = 255;
+    // The starting size of the queue. A power of two.
+    static final int QUEUE_SIZE = 1024;
+
+    int targetX;
+    int targetY;
+    // The last round in which a unit asked this field for directions.
+    int lastUsedRound;
+
+    // For each square, (generation << 8) | distance, where distance is the
+    // number of steps to the target plus one. Entries from an older
+    // generation have not been reached yet, so resetting the field is just a
+    // matter of bumping the generation.
+    private int[] dist = new int[SIZE * SIZE];
+    private int generation = 0;
+
+    // The squares whose neighbours we have yet to search, as packed
+    // locations (see LocationSet.pack()), in a ring buffer. Only the front
+    // of the search is ever in it, which is far smaller than the area the
+    // search covers, so it starts small and grows if a search needs more.
+    // queueHead and queueTail count from the last reset, and are taken
+    // modulo the queue's length.
+    private int[] queue = new int[QUEUE_SIZE];
+    private int queueHead;
+    private int queueTail;
+
+    DistanceField(int x, int y) {
+        reset(x, y);
+    }
+
+    // Start the search over again, towards the given target.
+    void reset(int x, int y) {
+        targetX = x;
+        targetY = y;
+        generation++;
+        queueHead = 0;
+        queueTail = 0;
+        setDist(x, y, 1);
+        queue[queueTail++] = LocationSet.pack(x, y);
+    }
+
+    boolean isTarget(int x, int y) {
+        return x == targetX && y == targetY;
+    }
+
+    // Whether the search has finished.
+    boolean isComplete() {
+        return queueHead == queueTail;
+    }
+
+    private int index(int x, int y) {
+        return (x & (SIZE - 1)) * SIZE + (y & (SIZE - 1));
+    }
+
+    private void setDist(int x, int y, int d) {
+        dist[index(x, y)] = (generation << 8) | d;
+    }
+
+    // Return the number of steps from the given square to the target, or -1
+    // if the search hasn't reached that square yet (or it is blocked).
+    int distanceAt(int x, int y) {
+        int dx = x - targetX;
+        int dy = y - targetY;
+        if (dx > MAX_DIST || dx < -MAX_DIST || dy > MAX_DIST || dy < -MAX_DIST)
+            return -1;
+        int val = dist[index(x, y)];
+        if ((val >>> 8) != generation)
+            return -1;
+        int d = val & 0xFF;
+        if (d == BLOCKED)
+            return -1;
+        return d - 1;
+    }
+
+    // Whether the search has treated the given square as passable.
+    boolean hasReached(int x, int y) {
+        return distanceAt(x, y) != -1;
+    }
+
+    // Search outwards from the next square in the queue. Squares for which
+    // pathFinder.isBlocked() is true are never passed through.
+    void expandNext(PathFinder pathFinder) {
+        int key = queue[queueHead++ & (queue.length - 1)];
+        int x = LocationSet.unpackX(key);
+        int y = LocationSet.unpackY(key);
+        int d = dist[index(x, y)] & 0xFF;
+        if (d > MAX_DIST)
+            return;
+
+        for (int i = 0; i < PathFinder.NUM_DIRS; i++) {
+            int nx = x + PathFinder.DX[i];
+            int ny = y + PathFinder.DY[i];
+            int n = index(nx, ny);
+            if ((dist[n] >>> 8) == generation)
+                continue;
+            if (pathFinder.isBlocked(nx, ny)) {
+                dist[n] = (generation << 8) | BLOCKED;
+                continue;
+            }
+            dist[n] = (generation << 8) | (d + 1);
+            if (queueTail - queueHead == queue.length)
+                growQueue();
+            queue[queueTail++ & (queue.length - 1)] = LocationSet.pack(nx, ny);
+        }
+    }
+
+    // Double the size of the queue, keeping what's in it.
+    private void growQueue() {
+        int[] bigger = new int[queue.length * 2];
+        for (int i = queueHead; i < queueTail; i++)
+            bigger[i & (bigger.length - 1)] = queue[i & (queue.length - 1)];
+        queue = bigger;
+    }
+}
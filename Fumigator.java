@@ -7,34 +7,81 @@ public class Fumigator extends Unit {
     // If this fumigator has this behavior, store this location here.
     Location toFumigate = null;
 
-    // Each fumigator gets a unique ID. We use this to determine what tactic
-    // this fumigator should use (eg, spread out or target infected cells).
+    // The cell this fumigator has claimed in the shared array, identified by
+    // the real coordinates of its lower-left square, or -1 if it has none.
+    int claimedCell = -1;
+    int claimedCellX;
+    int claimedCellY;
+    // The last round in which we renewed our claim.
+    int claimRenewedRound = 0;
+
+    // How many infected squares we look at when trying to find an unclaimed
+    // cell, before giving up for this turn.
+    int maxClaimTries = 8;
+
+    // Each fumigator gets a unique ID across the team, in the order they
+    // were built. We use this to determine what tactic this fumigator should
+    // use (eg, spread out or target infected cells), and which part of the
+    // map it looks after.
     int fumigatorID;
 
+    // Every TARGET_EVERY-th fumigator targets infected squares; the rest
+    // spread out.
+    static final int TARGET_EVERY = 3;
+    boolean isTargeter;
+    // For a targeter, its place among the targeters. For a spreader, its
+    // place among the spreaders.
+    int roleIndex;
+
+    // Spreaders each take the sector of the safe area in one of these
+    // directions from the base. Consecutive spreaders take opposite sides.
+    static final Direction[] SECTORS = {
+            Direction.NORTH, Direction.SOUTH, Direction.EAST, Direction.WEST,
+            Direction.NORTHEAST, Direction.SOUTHWEST, Direction.SOUTHEAST, Direction.NORTHWEST
+    };
+    Direction sector;
+
     Fumigator(UnitController uc){
         super(uc);
 
         stayInSafeRadius = true;
-        fumigatorID = numFumigators;
-        numFumigators++;
+        initPathFinder();
+        fumigatorID = uc.read(NEXT_FUMIGATOR_ID);
+        uc.write(NEXT_FUMIGATOR_ID, fumigatorID + 1);
+        isTargeter = fumigatorID % TARGET_EVERY == 0;
+        roleIndex = isTargeter ? fumigatorID / TARGET_EVERY :
+                fumigatorID - fumigatorID / TARGET_EVERY - 1;
+        sector = SECTORS[roleIndex % SECTORS.length];
+    }
+
+    // Return the middle of our sector: halfway from the base to the edge of
+    // the safe area, in our sector's direction.
+    protected Location sectorCenter() {
+        Location loc = baseLocation();
+        int steps = (int) Math.sqrt(readHeader(SAFE_RADIUS)) / 2;
+        for (int i = 0; i < steps; i++)
+            loc = loc.add(sector);
+        return loc;
     }
 
     // Write all adjacent locations into the shared array as fumigated.
     protected void writeFumigated() {
         Location loc = uc.getLocation();
         for (Direction dir : directions) {
-            if (isKnownInfected(loc.add(dir))) {
+            if (!canContinueJob())
+                return;
+            Location adj = loc.add(dir);
+            if (isKnownInfected(adj)) {
                 // This last check is to try to get rid of that weird case
                 // where a square wasn't cleaned. This might be computationally
                 // expensive.
-                if (isNearZombie(loc.add(dir)) == null) {
-                    int endIndex = uc.read(FUMIGATED_SQUARES_END);
-
-                    uc.write(endIndex, uc.getRound());
-                    uc.write(endIndex + 1, loc.add(dir).x);
-                    uc.write(endIndex + 2, loc.add(dir).y);
-                    uc.write(endIndex + 3, -1);
-                    uc.write(FUMIGATED_SQUARES_END, endIndex + 3);
+                if (isNearZombie(adj) == null) {
+                    appendJournal(FUMIGATED_SQUARES_START, FUMIGATED_SQUARES_HEAD,
+                            FUMIGATED_SQUARES_TAIL, FUMIGATED_SQUARES_GENERATION,
+                            adj.x, adj.y);
+                    // The square is clean again, so the next time it's
+                    // infected it should be written again.
+                    unflagInfected(adj.x, adj.y);
                 }
             }
         }
@@ -51,32 +98,113 @@ public class Fumigator extends Unit {
             toFumigate = null;
             return;
         }
-        if (!infectedLocations.contains(new MyLocation(toFumigate.x, toFumigate.y))) {
+        if (!infectedLocations.contains(toFumigate)) {
             toFumigate = null;
             return;
         }
 
     }
 
-    // If there is an unclaimed infected location and we don't already have
-    // a target location to fumigate, claim that location as our target.
+    // Return whether another fumigator currently holds a claim on the cell.
+    protected boolean isClaimedByOther(int cell) {
+        int slot = cellClaimSlot(cell);
+        int round = uc.read(slot + 1);
+        if (round == 0 || round < uc.getRound() - CLAIM_TIMEOUT)
+            return false;
+        return uc.read(slot) != myID;
+    }
+
+    // Claim the cell containing the given square for this fumigator.
+    protected void claimCell(int x, int y) {
+        claimedCell = cellIndex(x, y);
+        claimedCellX = x - (x & (CELL_SIZE - 1));
+        claimedCellY = y - (y & (CELL_SIZE - 1));
+        claimRenewedRound = uc.getRound();
+
+        int slot = cellClaimSlot(claimedCell);
+        uc.write(slot, myID);
+        uc.write(slot + 1, claimRenewedRound);
+    }
+
+    // Give up our claim on our cell, so that other fumigators may take it.
+    protected void releaseCell() {
+        if (claimedCell == -1)
+            return;
+        int slot = cellClaimSlot(claimedCell);
+        if (uc.read(slot) == myID)
+            uc.write(slot + 1, 0);
+        claimedCell = -1;
+    }
+
+    // Renew our claim before it times out, so that other fumigators keep
+    // leaving our cell alone. We only write every few rounds.
+    protected void maybeRenewClaim() {
+        if (claimedCell == -1)
+            return;
+        if (uc.getRound() - claimRenewedRound < CLAIM_TIMEOUT / 2)
+            return;
+        claimRenewedRound = uc.getRound();
+        uc.write(cellClaimSlot(claimedCell), myID);
+        uc.write(cellClaimSlot(claimedCell) + 1, claimRenewedRound);
+    }
+
+    // Return the closest known infected square in our claimed cell, or null
+    // if we have cleared the whole cell.
+    protected Location nextInClaimedCell() {
+        Location curLoc = uc.getLocation();
+        Location best = null;
+        int bestDist = Integer.MAX_VALUE;
+        for (int dx = 0; dx < CELL_SIZE; dx++) {
+            for (int dy = 0; dy < CELL_SIZE; dy++) {
+                int x = claimedCellX + dx;
+                int y = claimedCellY + dy;
+                if (!infectedLocations.contains(x, y))
+                    continue;
+                int dist = (x - curLoc.x) * (x - curLoc.x) + (y - curLoc.y) * (y - curLoc.y);
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    best = new Location(x, y);
+                }
+            }
+        }
+        return best;
+    }
+
+    // If we don't already have a target location to fumigate, take the next
+    // infected square in our claimed cell. Once that cell is clear, claim a
+    // new cell containing an infected square that no other fumigator has
+    // claimed, and start on that one.
     protected void maybeSelectToFumigate() {
         if (toFumigate != null)
             return;
 
-        if (infectedLocations.size() <= fumigatorID)
+        if (claimedCell != -1) {
+            toFumigate = nextInClaimedCell();
+            if (toFumigate != null)
+                return;
+            releaseCell();
+        }
+
+        int size = infectedLocations.size();
+        if (size == 0)
             return;
 
-        // TODO: This is just doing a linear search to find the next location
-        // to target. Should consider using a different data structure for
-        // infectedLocations so I can just go to infectedLocations[i] (or similar)
-        int i = 0;
-        for (MyLocation loc : infectedLocations) {
-            if (i == fumigatorID) {
-                toFumigate = new Location(loc.x, loc.y);
-                break;
-            }
-            i++;
+        // Positions in infectedLocations are dense, so we can split them
+        // evenly between the targeters. We go straight to the start of our
+        // slice, and look at the ones after it if that square's cell has
+        // already been claimed.
+        int targeters = (uc.read(NEXT_FUMIGATOR_ID) + TARGET_EVERY - 1) / TARGET_EVERY;
+        int start = (int) ((long) roleIndex * size / Math.max(1, targeters)) % size;
+        int tries = Math.min(maxClaimTries, size);
+        for (int i = 0; i < tries; i++) {
+            int pos = (start + i) % size;
+            int x = infectedLocations.getX(pos);
+            int y = infectedLocations.getY(pos);
+            if (isClaimedByOther(cellIndex(x, y)))
+                continue;
+            claimCell(x, y);
+            toFumigate = nextInClaimedCell();
+            return;
         }
     }
 
@@ -88,25 +216,16 @@ public class Fumigator extends Unit {
             return;
         }
 
+        prepareMoves();
+        Location curLoc = uc.getLocation();
         UnitInfo[] units = uc.senseUnits(uc.getTeam());
         for (int i = 0; i < units.length; i++) {
             if (units[i].getType() == UnitType.FUMIGATOR) {
-                if (uc.getLocation().distanceSquared(units[i].getLocation()) <= fumigatorRadius) {
-                    Direction dir = uc.getLocation().directionTo(units[i].getLocation()).opposite();
-
-                    if (!uc.canMove(dir))
-                        continue;
-
-                    Location newLoc = uc.getLocation().add(dir);
+                if (curLoc.distanceSquared(units[i].getLocation()) <= fumigatorRadius) {
+                    Direction dir = curLoc.directionTo(units[i].getLocation()).opposite();
 
                     // if stayInRadius and location is outside radius, don't move there
-                    if (stayInSafeRadius) {
-                        Location baseLoc = new Location(uc.read(BASE_LOC_X), uc.read(BASE_LOC_Y));
-                        if (newLoc.distanceSquared(baseLoc) > uc.read(SAFE_RADIUS))
-                            continue;
-                    }
-
-                    if (!couldMoveTo(newLoc))
+                    if (isOutsideRadius(dir) || !isGoodMove(dir))
                         continue;
 
                     uc.move(dir);
@@ -115,7 +234,12 @@ public class Fumigator extends Unit {
             }
         }
 
-        // If we've haven't been able to move yet, just make a default move.
+        // If we've haven't been able to move yet, head back to our sector,
+        // or wander around it if we're already there.
+        if (uc.getLocation().distanceSquared(sectorCenter()) > fumigatorRadius) {
+            if (moveTowardsLocation(sectorCenter()))
+                return;
+        }
         moveRandomly();
         return;
     }
@@ -125,9 +249,12 @@ public class Fumigator extends Unit {
     protected void playTarget() {
         maybeResetToFumigate();
         maybeSelectToFumigate();
+        maybeRenewClaim();
         if (toFumigate != null) {
+            // If we can't get to the square, leave the cell for someone else.
             if (!moveTowardsLocation(toFumigate)) {
                 toFumigate = null;
+                releaseCell();
             }
         } else {
             moveRandomly();
@@ -139,22 +266,32 @@ public class Fumigator extends Unit {
         moveFumigatorSpread();
     }
 
-    void play() {
-        // One third of fumigators target infected squares; the rest spread out.
-        if (fumigatorID % 3 == 0) {
-            playTarget();
+    void runTask(int task) {
+        if (task == TASK_MOVE) {
+            // One third of fumigators target infected squares; the rest spread out.
+            if (isTargeter) {
+                playTarget();
+            }
+            else {
+                playSpread();
+            }
         }
-        else {
-            playSpread();
+        else if (task == TASK_WRITE_INTEL) {
+            // Update the shared array with squares that this unit knows to be
+            // infected or fumigated.
+            writeInfected();
+            reportSightings();
+            writeFumigated();
+        }
+        else if (task == TASK_READ_INTEL) {
+            // Update this unit with information from the shared array about
+            // squares which are known to be infected or fumigated.
+            updateInfected();
+            updateFumigated();
+        }
+        else if (task == TASK_HOUSEKEEPING) {
+            expandPathFinder();
         }
-
-        // Update this unit with information from the shared array about squares
-        // which are known to be infected or fumigated. Also update the shared
-        // array with squares that this unit knows to be infected or fumigated.
-        updateInfected();
-        updateFumigated();
-        writeInfected();
-        writeFumigated();
     }
 
 
@@ -7,14 +7,14 @@ public class Laboratory extends Unit {
         super(uc);
     }
 
-    // Attempt to spawn an infecter, if appropriate.
+    // Attempt to spawn an infecter, if appropriate. If not, or if we can't,
+    // wait until something changes.
     void play() {
-        if (shouldCreateUnit(UnitType.INFECTER, false)) {
-            if (spawn(UnitType.INFECTER)) {
-                uc.write(INFECTER_INDEX, uc.read(INFECTER_INDEX) + 1);
-                incrementBuildNum();
-            }
-        }
+        if (!hasProductionChanged())
+            return;
+        if (shouldCreateUnit(INFECTER_INDEX) && spawnWithTicket(UnitType.INFECTER))
+            return;
+        waitForProduction();
     }
 
 }
@@ -0,0 +1,172 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+/**
+ * A set of map locations which does not allocate on add, contains, or remove.
+ * Each (x, y) pair is packed into a single int key. The keys are stored
+ * densely in an array, and an open addressing hash table with linear probing
+ * maps each key to its position in that array. This gives O(1) contains,
+ * O(1) removal (by swapping the last key into the hole), and O(1) access by
+ * position, so callers can pick the i-th element without iterating.
+ */
+public class LocationSet {
+
+    // The packed keys, in positions 0 to size - 1.
+    private int[] dense;
+    // Hash table of positions into dense, offset by one so that 0 marks an
+    // unused slot.
+    private int[] table;
+    private int mask;
+    // Slots are taken from the top bits of the hash, so the shift is 32 less
+    // the number of bits in a slot index.
+    private int shift;
+    private int size;
+
+    LocationSet() {
+        this(64);
+    }
+
+    // The capacity must be a power of two.
+    LocationSet(int capacity) {
+        dense = new int[capacity / 2];
+        table = new int[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    // Pack an (x, y) pair into a single int key.
+    static int pack(int x, int y) {
+        return (x << 16) | (y & 0xFFFF);
+    }
+
+    static int unpackX(int key) {
+        return key >> 16;
+    }
+
+    static int unpackY(int key) {
+        return (short) key;
+    }
+
+    private int slotFor(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 0;
+        }
+        size = 0;
+    }
+
+    // The packed key at the given position, for 0 <= i < size(). Removing
+    // an element moves the last element into its position.
+    int get(int i) {
+        return dense[i];
+    }
+
+    int getX(int i) {
+        return unpackX(dense[i]);
+    }
+
+    int getY(int i) {
+        return unpackY(dense[i]);
+    }
+
+    // Return the table slot holding the given key, or the empty slot where
+    // it would be inserted.
+    private int find(int key) {
+        int slot = slotFor(key);
+        while (table[slot] != 0) {
+            if (dense[table[slot] - 1] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    boolean contains(Location loc) {
+        return contains(loc.x, loc.y);
+    }
+
+    boolean contains(int x, int y) {
+        return table[find(pack(x, y))] != 0;
+    }
+
+    boolean add(Location loc) {
+        return add(loc.x, loc.y);
+    }
+
+    // Add the location to the set. Returns false if it was already present.
+    boolean add(int x, int y) {
+        int key = pack(x, y);
+        int slot = find(key);
+        if (table[slot] != 0)
+            return false;
+        dense[size] = key;
+        size++;
+        table[slot] = size;
+        // Keep the table at most half full so probe sequences stay short.
+        if (size * 2 >= table.length)
+            grow();
+        return true;
+    }
+
+    boolean remove(Location loc) {
+        return remove(loc.x, loc.y);
+    }
+
+    // Remove the location from the set. Returns false if it was not present.
+    boolean remove(int x, int y) {
+        int slot = find(pack(x, y));
+        if (table[slot] == 0)
+            return false;
+
+        // Move the last key into the hole this one leaves in dense.
+        int pos = table[slot] - 1;
+        size--;
+        if (pos != size) {
+            int last = dense[size];
+            int lastSlot = find(last);
+            dense[pos] = last;
+            table[lastSlot] = pos + 1;
+        }
+
+        // Shift any following entries in the same probe run back into the
+        // gap, so that we never need tombstones.
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (table[next] != 0) {
+            int home = slotFor(dense[table[next] - 1]);
+            // Move the entry if its home slot is not between the gap and next
+            // (cyclically), ie if it would no longer be found otherwise.
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap] = 0;
+        return true;
+    }
+
+    private void grow() {
+        int[] oldDense = dense;
+        dense = new int[oldDense.length * 2];
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        shift--;
+        for (int i = 0; i < size; i++) {
+            dense[i] = oldDense[i];
+            table[find(dense[i])] = i + 1;
+        }
+    }
+}
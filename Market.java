@@ -7,20 +7,27 @@ public class Market extends Unit {
         super(uc);
     }
 
-    // Attempt to spawn fumigators and essential workers, if appropriate.
+    // Attempt to spawn fumigators and essential workers, if the base has
+    // decided that's what we need next. If we have nothing to build, or
+    // can't build it, wait until something changes.
     void play() {
-        if (shouldCreateUnit(UnitType.FUMIGATOR, false)) {
-            if (spawn(UnitType.FUMIGATOR)) {
-                uc.write(FUMIGATOR_INDEX, uc.read(FUMIGATOR_INDEX) + 1);
-                incrementBuildNum();
-            }
+        if (!hasProductionChanged())
+            return;
+        boolean built = false;
+        if (shouldCreateUnitRatio(UnitType.FUMIGATOR)) {
+            if (spawnWithTicket(UnitType.FUMIGATOR))
+                built = true;
+            else
+                reportIfBoxedIn(UnitType.FUMIGATOR);
         }
-        if (shouldCreateUnit(UnitType.ESSENTIAL_WORKER, false)) {
-            if (spawn(UnitType.ESSENTIAL_WORKER)) {
-                uc.write(WORKER_INDEX, uc.read(WORKER_INDEX) + 1);
-                incrementBuildNum();
-            }
+        if (shouldCreateUnitRatio(UnitType.ESSENTIAL_WORKER)) {
+            if (spawnWithTicket(UnitType.ESSENTIAL_WORKER))
+                built = true;
+            else
+                reportIfBoxedIn(UnitType.ESSENTIAL_WORKER);
         }
+        if (!built)
+            waitForProduction();
     }
 
 }
@@ -0,0 +1,297 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+/**
+ * Obstacle-aware movement. We keep a small cache of distance fields, each of
+ * which holds the number of steps from every nearby square to some target
+ * (the first of which is always the base). The fields are built a little at
+ * a time with whatever energy a unit has left at the end of its turn, and
+ * once a field reaches the unit's square, finding the next step towards the
+ * target is just a look at the eight neighbouring squares.
+ *
+ * Squares we cannot sense are assumed to be passable. Whenever we find that a
+ * square a field has routed through is actually blocked, we start that field
+ * over again.
+ *
+ * Routes found this way are published to the team's RouteCache. Before
+ * searching for a path ourselves, we check whether someone else has already
+ * published one we can follow.
+ */
+public class PathFinder {
+
+    // The eight directions a unit can step in, with their offsets.
+    static final int NUM_DIRS = 8;
+    static final Direction[] DIRS = new Direction[NUM_DIRS];
+    static final int[] DX = new int[NUM_DIRS];
+    static final int[] DY = new int[NUM_DIRS];
+
+    static {
+        Location origin = new Location(0, 0);
+        int i = 0;
+        for (Direction dir : Direction.values()) {
+            if (dir == Direction.ZERO)
+                continue;
+            Location loc = origin.add(dir);
+            DIRS[i] = dir;
+            DX[i] = loc.x;
+            DY[i] = loc.y;
+            i++;
+        }
+    }
+
+    // How many distance fields we keep at once. The first is always the
+    // field to the base.
+    static final int CACHE_SIZE = 3;
+
+    // How often we look through the route cache for a route to a target
+    // our own fields haven't reached yet.
+    static final int ROUTE_LOOKUP_INTERVAL = 5;
+
+    UnitController uc;
+    DistanceField[] fields = new DistanceField[CACHE_SIZE];
+    // Squares we have seen to be blocked.
+    LocationSet blocked = new LocationSet();
+
+    // Routes shared with the rest of the team.
+    RouteCache routes;
+    // The route we are following, if any, where we are on it, and the
+    // direction of the step we last took along it.
+    int routeEntry = -1;
+    int routeStep;
+    int routeDir = -1;
+    int routeStartKey;
+    int routeGoalX;
+    int routeGoalY;
+    int routeX;
+    int routeY;
+    // The last target we looked for a route to, and when.
+    int lookupGoalKey;
+    int lookupRound = -ROUTE_LOOKUP_INTERVAL;
+    // The last target we published a route to, so we only publish once.
+    int publishedGoalKey;
+    boolean hasPublished = false;
+    // Scratch space for building a route to publish.
+    int[] routeDirs = new int[RouteCache.MAX_LENGTH];
+
+    PathFinder(UnitController uc, int baseX, int baseY, RouteCache routes) {
+        this.uc = uc;
+        this.routes = routes;
+        fields[0] = new DistanceField(baseX, baseY);
+    }
+
+    // Return whether the given square is known to be blocked. If we can
+    // sense the square we check it directly, and remember the result.
+    boolean isBlocked(int x, int y) {
+        if (blocked.contains(x, y))
+            return true;
+        Location loc = new Location(x, y);
+        if (!uc.canSenseLocation(loc))
+            return false;
+        if (uc.isOutOfMap(loc) || !uc.isAccessible(loc)) {
+            blocked.add(x, y);
+            return true;
+        }
+        return false;
+    }
+
+    // Record that the given square is blocked, and start over any field
+    // which was routing through it.
+    void markBlocked(int x, int y) {
+        blocked.add(x, y);
+        // Any route we published may go through this square, so publish
+        // again once our fields are rebuilt.
+        hasPublished = false;
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (fields[i] != null && fields[i].hasReached(x, y))
+                fields[i].reset(fields[i].targetX, fields[i].targetY);
+        }
+    }
+
+    // Return the field towards the given target if we have one, or null.
+    DistanceField cachedField(int x, int y) {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (fields[i] != null && fields[i].isTarget(x, y)) {
+                fields[i].lastUsedRound = uc.getRound();
+                return fields[i];
+            }
+        }
+        return null;
+    }
+
+    // Return the field towards the given target, replacing the least
+    // recently used field (other than the base's) if we don't have one.
+    DistanceField fieldTo(int x, int y) {
+        int oldest = 1;
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (fields[i] == null) {
+                oldest = i;
+                break;
+            }
+            if (fields[i].isTarget(x, y)) {
+                fields[i].lastUsedRound = uc.getRound();
+                return fields[i];
+            }
+            if (i > 0 && fields[i].lastUsedRound < fields[oldest].lastUsedRound)
+                oldest = i;
+        }
+        if (fields[oldest] == null)
+            fields[oldest] = new DistanceField(x, y);
+        else
+            fields[oldest].reset(x, y);
+        fields[oldest].lastUsedRound = uc.getRound();
+        return fields[oldest];
+    }
+
+    // Return the direction of the next step from our location towards the
+    // given target, or null if the field to that target hasn't reached us
+    // yet (or we are already there). We prefer a step we can take right now,
+    // but if every step closer is occupied we still return one of them.
+    Direction nextStep(int targetX, int targetY) {
+        Location curLoc = uc.getLocation();
+
+        // If another unit has already found a route from here, use that
+        // rather than searching for one ourselves.
+        Direction dir = nextRouteStep(targetX, targetY, curLoc);
+        if (dir != null)
+            return dir;
+
+        // Only start a field of our own if there's no route to follow.
+        DistanceField field = cachedField(targetX, targetY);
+        if (field == null || field.distanceAt(curLoc.x, curLoc.y) < 0) {
+            if (findRoute(targetX, targetY, curLoc))
+                return nextRouteStep(targetX, targetY, curLoc);
+        }
+        if (field == null)
+            field = fieldTo(targetX, targetY);
+        int d = field.distanceAt(curLoc.x, curLoc.y);
+        if (d <= 0)
+            return null;
+        maybePublishRoute(field, curLoc, d);
+
+        Direction fallback = null;
+        for (int i = 0; i < NUM_DIRS; i++) {
+            int nx = curLoc.x + DX[i];
+            int ny = curLoc.y + DY[i];
+            if (field.distanceAt(nx, ny) != d - 1)
+                continue;
+            // The field assumed this square was passable; if we can now see
+            // that it isn't, the field needs to be rebuilt.
+            if (isBlocked(nx, ny)) {
+                markBlocked(nx, ny);
+                return null;
+            }
+            if (uc.canMove(DIRS[i]))
+                return DIRS[i];
+            if (fallback == null)
+                fallback = DIRS[i];
+        }
+        return fallback;
+    }
+
+    // Return the next step of the route we are following to the given
+    // target, or null if we aren't following one (or have wandered off it).
+    private Direction nextRouteStep(int targetX, int targetY, Location curLoc) {
+        if (routeEntry == -1)
+            return null;
+        if (targetX != routeGoalX || targetY != routeGoalY) {
+            routeEntry = -1;
+            return null;
+        }
+        // If we took the last step we were given, move along the route.
+        if (routeDir != -1 && curLoc.x == routeX + DX[routeDir] &&
+                curLoc.y == routeY + DY[routeDir]) {
+            routeStep++;
+            routeX = curLoc.x;
+            routeY = curLoc.y;
+        }
+        routeDir = -1;
+        if (curLoc.x != routeX || curLoc.y != routeY) {
+            routeEntry = -1;
+            return null;
+        }
+
+        int dir = routes.step(routeEntry, routeStartKey,
+                LocationSet.pack(targetX, targetY), routeStep);
+        if (dir == -1) {
+            routeEntry = -1;
+            return null;
+        }
+        int nx = curLoc.x + DX[dir];
+        int ny = curLoc.y + DY[dir];
+        // The route is blocked, so nobody else should use it either.
+        if (isBlocked(nx, ny)) {
+            markBlocked(nx, ny);
+            routes.invalidate(routeEntry);
+            routeEntry = -1;
+            return null;
+        }
+        routeDir = dir;
+        return DIRS[dir];
+    }
+
+    // Look for a published route to the given target which passes through
+    // our location, and start following it if there is one.
+    private boolean findRoute(int targetX, int targetY, Location curLoc) {
+        int goalKey = LocationSet.pack(targetX, targetY);
+        if (goalKey == lookupGoalKey && uc.getRound() - lookupRound < ROUTE_LOOKUP_INTERVAL)
+            return false;
+        lookupGoalKey = goalKey;
+        lookupRound = uc.getRound();
+
+        int entry = routes.find(targetX, targetY, curLoc.x, curLoc.y);
+        if (entry == -1)
+            return false;
+        routeEntry = entry;
+        routeStep = routes.foundStep;
+        routeDir = -1;
+        routeStartKey = routes.startKey(entry);
+        routeGoalX = targetX;
+        routeGoalY = targetY;
+        routeX = curLoc.x;
+        routeY = curLoc.y;
+        return true;
+    }
+
+    // Publish the route from our location to the field's target, the first
+    // time the field reaches us, so the rest of the team can use it.
+    private void maybePublishRoute(DistanceField field, Location curLoc, int d) {
+        int goalKey = LocationSet.pack(field.targetX, field.targetY);
+        if (hasPublished && goalKey == publishedGoalKey)
+            return;
+        if (d > RouteCache.MAX_LENGTH)
+            return;
+        hasPublished = true;
+        publishedGoalKey = goalKey;
+
+        int x = curLoc.x;
+        int y = curLoc.y;
+        for (int step = 0; step < d; step++) {
+            for (int i = 0; i < NUM_DIRS; i++) {
+                if (field.distanceAt(x + DX[i], y + DY[i]) == d - step - 1) {
+                    routeDirs[step] = i;
+                    x += DX[i];
+                    y += DY[i];
+                    break;
+                }
+            }
+        }
+        routes.publish(curLoc.x, curLoc.y, field.targetX, field.targetY, routeDirs, d);
+    }
+
+    // Spend energy building our distance fields, stopping once we have only
+    // reserveEnergy left. Fields are expanded in the order they are cached,
+    // so the field to the base is always finished first.
+    void expand(int reserveEnergy) {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            DistanceField field = fields[i];
+            if (field == null)
+                continue;
+            while (!field.isComplete()) {
+                if (uc.getEnergyLeft() < reserveEnergy)
+                    return;
+                field.expandNext(this);
+            }
+        }
+    }
+}
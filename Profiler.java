@@ -0,0 +1,170 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+import java.util.Arrays;
+
+/**
+ * Energy profiling for the methods which run on most turns of most units.
+ * Each profiled method calls start() on entry and stop() on exit, and we
+ * record the energy used in between: in total and per call, per unit type and
+ * per round, along with a histogram of the energy of single calls. All of the
+ * tables are allocated up front, so profiling a call never allocates.
+ *
+ * A call which is still running when its unit runs out of energy finishes on
+ * a later turn. We can't tell how much energy such a call used, so we count
+ * it as an overrun instead; these are the calls which cost us timeouts.
+ *
+ * Profiling is off unless ENABLED is set. Callers guard every call with
+ * if (Profiler.ENABLED); since ENABLED is a constant, the compiler then drops
+ * the calls altogether and a disabled profiler costs nothing.
+ */
+public class Profiler {
+
+    public static final boolean ENABLED = false;
+
+    // The profiled methods.
+    static final int UPDATE_INFECTED = 0;
+    static final int UPDATE_FUMIGATED = 1;
+    static final int WRITE_INFECTED = 2;
+    static final int IS_NEAR_ZOMBIE = 3;
+    static final int MOVE_HAZARD = 4;
+    static final int MOVE_RANDOMLY = 5;
+    static final int SPAWN = 6;
+    static final int EXPIRE_INFECTED = 7;
+    static final int EXPIRE_FUMIGATED = 8;
+    static final int NUM_METHODS = 9;
+
+    static final String[] METHOD_NAMES = {
+            "updateInfected", "updateFumigated", "writeInfected", "isNearZombie",
+            "moveHazard", "moveRandomly", "spawn", "expireInfected", "expireFumigated"
+    };
+
+    static final int NUM_TYPES = UnitType.values().length;
+
+    // Calls are bucketed by the number of bits in the energy they used, so
+    // bucket b holds calls which used from 2^(b-1) to 2^b - 1 energy.
+    static final int NUM_BUCKETS = 16;
+
+    // Rounds beyond this are counted in the last round.
+    static final int MAX_ROUNDS = 3000;
+
+    // The round at which each unit prints the report, if autoReport is set.
+    static final int REPORT_ROUND = 1999;
+
+    // Cleared by tools which print the report themselves, such as the
+    // simulator.
+    public static boolean autoReport = true;
+    static boolean reported = false;
+
+    static final long[][] energy = new long[NUM_METHODS][ENABLED ? NUM_TYPES : 0];
+    static final int[][] calls = new int[NUM_METHODS][ENABLED ? NUM_TYPES : 0];
+    static final int[][] overruns = new int[NUM_METHODS][ENABLED ? NUM_TYPES : 0];
+    static final int[] maxEnergy = new int[NUM_METHODS];
+    static final int[][] histogram = new int[NUM_METHODS][ENABLED ? NUM_BUCKETS : 0];
+    static final int[][] roundEnergy = new int[NUM_METHODS][ENABLED ? MAX_ROUNDS : 0];
+
+    // Return the value to pass to stop() once the profiled call is done.
+    // Energy used within a turn stays well below 2^16, so we pack the round
+    // in with it to tell whether the call ran over into a later turn.
+    static int start(UnitController uc) {
+        if (!ENABLED)
+            return 0;
+        return (uc.getRound() << 16) | uc.getEnergyUsed();
+    }
+
+    // Record a call to the given method, which began with start() returning
+    // startValue.
+    static void stop(UnitController uc, int method, int startValue) {
+        if (!ENABLED)
+            return;
+        int used = uc.getEnergyUsed();
+        int round = uc.getRound();
+        int type = uc.getType().ordinal();
+        calls[method][type]++;
+        if (round != (startValue >>> 16)) {
+            overruns[method][type]++;
+            return;
+        }
+        used -= startValue & 0xFFFF;
+        energy[method][type] += used;
+        if (used > maxEnergy[method])
+            maxEnergy[method] = used;
+        histogram[method][Math.min(NUM_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(used))]++;
+        roundEnergy[method][Math.min(MAX_ROUNDS - 1, round)] += used;
+    }
+
+    // Print the report once we reach REPORT_ROUND. Called every turn.
+    static void maybeReport(UnitController uc) {
+        if (!ENABLED || !autoReport || reported || uc.getRound() < REPORT_ROUND)
+            return;
+        reported = true;
+        System.out.println("Profile of unit " + uc.getInfo().getID() + " (" + uc.getType() + ")");
+        System.out.print(report());
+    }
+
+    // Clear everything recorded so far.
+    public static void reset() {
+        for (int m = 0; m < NUM_METHODS; m++) {
+            Arrays.fill(energy[m], 0);
+            Arrays.fill(calls[m], 0);
+            Arrays.fill(overruns[m], 0);
+            Arrays.fill(histogram[m], 0);
+            Arrays.fill(roundEnergy[m], 0);
+            maxEnergy[m] = 0;
+        }
+        reported = false;
+    }
+
+    // Return a report of everything recorded so far: for each method, its
+    // calls, overruns and energy, broken down by unit type, the histogram of
+    // energy per call, and the round in which the method used the most
+    // energy.
+    public static String report() {
+        if (!ENABLED)
+            return "Profiling is disabled; set Profiler.ENABLED to enable it.\n";
+        StringBuilder sb = new StringBuilder();
+        UnitType[] types = UnitType.values();
+        for (int m = 0; m < NUM_METHODS; m++) {
+            long totalEnergy = 0;
+            int totalCalls = 0;
+            int totalOverruns = 0;
+            for (int t = 0; t < NUM_TYPES; t++) {
+                totalEnergy += energy[m][t];
+                totalCalls += calls[m][t];
+                totalOverruns += overruns[m][t];
+            }
+            if (totalCalls == 0)
+                continue;
+            int measured = totalCalls - totalOverruns;
+            sb.append(String.format("%-16s calls=%d overruns=%d energy=%d mean=%.1f max=%d%n",
+                    METHOD_NAMES[m], totalCalls, totalOverruns, totalEnergy,
+                    measured == 0 ? 0.0 : (double) totalEnergy / measured, maxEnergy[m]));
+
+            for (int t = 0; t < NUM_TYPES; t++) {
+                if (calls[m][t] == 0)
+                    continue;
+                int typeMeasured = calls[m][t] - overruns[m][t];
+                sb.append(String.format("    %-16s calls=%d overruns=%d mean=%.1f%n",
+                        types[t], calls[m][t], overruns[m][t],
+                        typeMeasured == 0 ? 0.0 : (double) energy[m][t] / typeMeasured));
+            }
+
+            sb.append("    histogram");
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                if (histogram[m][b] != 0)
+                    sb.append(" <").append(1 << b).append(':').append(histogram[m][b]);
+            }
+            sb.append('\n');
+
+            int peakRound = 0;
+            for (int r = 1; r < MAX_ROUNDS; r++) {
+                if (roundEnergy[m][r] > roundEnergy[m][peakRound])
+                    peakRound = r;
+            }
+            sb.append(String.format("    peak round=%d energy=%d%n",
+                    peakRound, roundEnergy[m][peakRound]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package ratioplayer;
+
+/**
+ * A small xorshift random number generator. Each unit has its own, seeded
+ * from its ID and the round it was created in, so units don't share any
+ * state (Math.random() goes through a single synchronized generator) and a
+ * game replayed from the same start makes exactly the same choices.
+ */
+public class Rng {
+
+    private int state;
+
+    Rng(int id, int round) {
+        // Mix the seed so that units with consecutive IDs, created in the
+        // same round, still start far apart. The state must not be 0.
+        int seed = id * 0x9E3779B9 + round * 0x85EBCA6B;
+        seed ^= seed >>> 16;
+        seed *= 0x7FEB352D;
+        seed ^= seed >>> 15;
+        seed *= 0x846CA68B;
+        seed ^= seed >>> 16;
+        state = seed == 0 ? 1 : seed;
+    }
+
+    int nextInt() {
+        int x = state;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        state = x;
+        return x;
+    }
+
+    // A random int from 0 to bound - 1.
+    int nextInt(int bound) {
+        return (int) (((nextInt() >>> 1) * (long) bound) >>> 31);
+    }
+}
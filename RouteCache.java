@@ -0,0 +1,149 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+/**
+ * Routes between squares, published in the shared array so that a path only
+ * needs to be searched for once per team rather than once per unit. Once a
+ * unit's distance field has reached it, it publishes the route it would take
+ * to the field's target. Any other unit standing on that route, and heading
+ * for the same target, can then follow it without building a field of its
+ * own.
+ *
+ * The cache holds NUM_ENTRIES entries of ENTRY_SIZE slots each:
+ *   start   - the first square of the route, packed with LocationSet.pack()
+ *   goal    - the last square of the route, packed the same way
+ *   length  - the number of steps in the route, or 0 if the entry is unused
+ *   used    - the last round in which a unit published or adopted the route
+ *   steps   - the direction of each step, as an index into PathFinder.DIRS,
+ *             packed STEPS_PER_SLOT to a slot
+ * When a new route is published, it replaces the least recently used entry.
+ * A unit which finds a route blocked invalidates it by zeroing its length.
+ */
+public class RouteCache {
+
+    static final int NUM_ENTRIES = 32;
+    static final int STEP_SLOTS = 12;
+    static final int STEPS_PER_SLOT = 10;
+    static final int MAX_LENGTH = STEP_SLOTS * STEPS_PER_SLOT;
+    static final int ENTRY_SIZE = 4 + STEP_SLOTS;
+
+    static final int START = 0;
+    static final int GOAL = 1;
+    static final int LENGTH = 2;
+    static final int USED = 3;
+    static final int STEPS = 4;
+
+    UnitController uc;
+    // The index in the shared array at which the cache begins.
+    int cacheStart;
+
+    // Set by find() to the step of the route at which the unit should
+    // carry on.
+    int foundStep;
+
+    RouteCache(UnitController uc, int cacheStart) {
+        this.uc = uc;
+        this.cacheStart = cacheStart;
+    }
+
+    private int slot(int entry, int field) {
+        return cacheStart + entry * ENTRY_SIZE + field;
+    }
+
+    // Return the direction index of the given step of the route, or -1 if
+    // the route has been invalidated or replaced since we found it.
+    int step(int entry, int startKey, int goalKey, int step) {
+        if (uc.read(slot(entry, START)) != startKey ||
+                uc.read(slot(entry, GOAL)) != goalKey)
+            return -1;
+        if (step >= uc.read(slot(entry, LENGTH)))
+            return -1;
+        int packed = uc.read(slot(entry, STEPS + step / STEPS_PER_SLOT));
+        return (packed >>> ((step % STEPS_PER_SLOT) * 3)) & 7;
+    }
+
+    int startKey(int entry) {
+        return uc.read(slot(entry, START));
+    }
+
+    // Find a route to the given goal which passes through (x, y). Returns
+    // the entry, with foundStep set to the step to take from (x, y), or -1 if
+    // there is no such route.
+    int find(int goalX, int goalY, int x, int y) {
+        int goalKey = LocationSet.pack(goalX, goalY);
+        for (int entry = 0; entry < NUM_ENTRIES; entry++) {
+            if (uc.read(slot(entry, GOAL)) != goalKey)
+                continue;
+            int length = uc.read(slot(entry, LENGTH));
+            if (length == 0)
+                continue;
+
+            // Walk the route looking for our square.
+            int start = uc.read(slot(entry, START));
+            int cx = LocationSet.unpackX(start);
+            int cy = LocationSet.unpackY(start);
+            int packed = 0;
+            for (int i = 0; i < length; i++) {
+                if (i % STEPS_PER_SLOT == 0)
+                    packed = uc.read(slot(entry, STEPS + i / STEPS_PER_SLOT));
+                if (cx == x && cy == y) {
+                    foundStep = i;
+                    uc.write(slot(entry, USED), uc.getRound());
+                    return entry;
+                }
+                int dir = (packed >>> ((i % STEPS_PER_SLOT) * 3)) & 7;
+                cx += PathFinder.DX[dir];
+                cy += PathFinder.DY[dir];
+            }
+        }
+        return -1;
+    }
+
+    // Publish a route of the given directions from (startX, startY) to
+    // (goalX, goalY), unless the same route is already cached.
+    void publish(int startX, int startY, int goalX, int goalY, int[] dirs, int length) {
+        if (length == 0 || length > MAX_LENGTH)
+            return;
+        int startKey = LocationSet.pack(startX, startY);
+        int goalKey = LocationSet.pack(goalX, goalY);
+
+        int victim = 0;
+        int victimUsed = Integer.MAX_VALUE;
+        for (int entry = 0; entry < NUM_ENTRIES; entry++) {
+            int entryLength = uc.read(slot(entry, LENGTH));
+            if (entryLength != 0 && uc.read(slot(entry, START)) == startKey &&
+                    uc.read(slot(entry, GOAL)) == goalKey) {
+                uc.write(slot(entry, USED), uc.getRound());
+                return;
+            }
+            int used = entryLength == 0 ? -1 : uc.read(slot(entry, USED));
+            if (used < victimUsed) {
+                victim = entry;
+                victimUsed = used;
+            }
+        }
+
+        // Zero the length first, so the entry is never seen half written.
+        uc.write(slot(victim, LENGTH), 0);
+        uc.write(slot(victim, START), startKey);
+        uc.write(slot(victim, GOAL), goalKey);
+        uc.write(slot(victim, USED), uc.getRound());
+        for (int s = 0; s < STEP_SLOTS && s * STEPS_PER_SLOT < length; s++) {
+            int packed = 0;
+            for (int i = 0; i < STEPS_PER_SLOT; i++) {
+                int step = s * STEPS_PER_SLOT + i;
+                if (step >= length)
+                    break;
+                packed |= dirs[step] << (i * 3);
+            }
+            uc.write(slot(victim, STEPS + s), packed);
+        }
+        uc.write(slot(victim, LENGTH), length);
+    }
+
+    // Mark the route as unusable, eg because we found it to be blocked.
+    void invalidate(int entry) {
+        uc.write(slot(entry, LENGTH), 0);
+    }
+}
@@ -1,7 +1,6 @@
 package ratioplayer;
 
 import aic2020.user.*;
-import java.util.*;
 
 /**
  * Soldiers attempt to find a location (a post) where there is no friendly soldier
@@ -14,13 +13,15 @@ public class Soldier extends Unit {
 
     // Track locations that are already within soldierPostRadius distance
     // of a solider; hence they should not be considered when trying to find a post.
-    public HashSet<MyLocation> alreadyCheckedLocations;
+    public LocationSet alreadyCheckedLocations;
 
     Soldier(UnitController uc) {
         super(uc);
 
         stayInSafeRadius = true;
-        alreadyCheckedLocations = new HashSet<MyLocation>();
+        alreadyCheckedLocations = new LocationSet();
+
+        initPathFinder();
 
         postX = -1;
         postY = -1;
@@ -37,6 +38,15 @@ public class Soldier extends Unit {
     int postX;
     int postY;
 
+    // A soldier standing at its post with nothing in sight has nothing to
+    // do, so it hibernates: each turn it senses once and reads the version
+    // of its post's region, and only runs its full turn if it sees a zombie
+    // or enemy, or intel about the region has changed. hibernating is set
+    // after a full turn in which all was quiet, along with the region
+    // version as of the start of that turn.
+    boolean hibernating = false;
+    int regionVersionSeen = 0;
+
     // If all possible adjacent locations have already been checked and
     // we have not yet found a post, we are stuck and need to clear our
     // alreadyCheckedLocations so we can travel in a new direction to
@@ -48,21 +58,69 @@ public class Soldier extends Unit {
                 continue;
             if (!uc.isAccessible(loc))
                 continue;
-            if (!alreadyCheckedLocations.contains(new MyLocation(loc.x, loc.y)))
+            if (!alreadyCheckedLocations.contains(loc))
                 return;
         }
         alreadyCheckedLocations.clear();
     }
 
-    // Move randomly until it finds a post. Attacks every enemy it sees.
     void play() {
-        // We always attack enemy units we can see.
-        attack();
+        if (hibernating) {
+            if (threatMap.numSensed() == 0 &&
+                    uc.read(regionVersionSlot(postX, postY)) == regionVersionSeen)
+                return;
+            hibernating = false;
+        }
+
+        int version = foundPost ? uc.read(regionVersionSlot(postX, postY)) : 0;
+        super.play();
+        if (isQuietAtPost()) {
+            hibernating = true;
+            regionVersionSeen = version;
+        }
+    }
+
+    // Return whether we can hibernate after this turn: we are at our post,
+    // there is nothing in sight, and we have caught up on intel.
+    private boolean isQuietAtPost() {
+        if (!foundPost)
+            return false;
+        Location curLoc = uc.getLocation();
+        return curLoc.x == postX && curLoc.y == postY && threatMap.numSensed() == 0 && isIntelCurrent();
+    }
+
+    // Move randomly until it finds a post. Attacks every enemy it sees.
+    void runTask(int task) {
+        if (task == TASK_ATTACK) {
+            // We always attack enemy units we can see.
+            attack();
+        }
+        else if (task == TASK_MOVE) {
+            playMove();
+        }
+        else if (task == TASK_WRITE_INTEL) {
+            // Update the shared array with squares that this unit knows to
+            // be infected.
+            writeInfected();
+            reportSightings();
+        }
+        else if (task == TASK_READ_INTEL) {
+            // Update this unit with information from the shared array about
+            // squares which are known to be infected or fumigated.
+            updateInfected();
+            updateFumigated();
+        }
+        else if (task == TASK_HOUSEKEEPING) {
+            expandPathFinder();
+        }
+    }
 
+    // Look for a post, or hold the one we have found.
+    private void playMove() {
         // If we haven't found a post yet, move randomly to a location we
         // haven't checked yet. Then see if the new location is a valid post.
         if (!foundPost) {
-            alreadyCheckedLocations.add(new MyLocation(uc.getLocation().x, uc.getLocation().y));
+            alreadyCheckedLocations.add(uc.getLocation());
             maybeClearAlreadyCheckedLocations();
             moveRandomly(alreadyCheckedLocations);
             if (haveFoundPost()) {
@@ -87,12 +145,6 @@ public class Soldier extends Unit {
                 moveTowardsLocation(new Location(postX, postY));
             }
         }
-        // Update this unit with information from the shared array about squares
-        // which are known to be infected or fumigated. Also update the shared
-        // array with squares that this unit knows to be infected.
-        updateInfected();
-        updateFumigated();
-        writeInfected();
     }
 
     // Check if the current location is a valid post for this soldier.
@@ -0,0 +1,148 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+/**
+ * The zombies and enemy fumigators a unit can see this turn, and the squares
+ * around it which are in danger from them. We sense once per turn, the first
+ * time we're asked, and mark every square within GRID_RADIUS of where the
+ * unit stood which is within dangerRadius of a threat. Asking whether one of
+ * those squares is in danger is then a single look in the grid, however many
+ * moves the unit considers. For squares further away we check each threat in
+ * turn, which still needs no sensing.
+ *
+ * Threats which die during the turn are still counted until the next turn.
+ * We also count the zombies and enemy soldiers in sight, which units report
+ * to the production controller, and every zombie and enemy unit in sight,
+ * which tells a hibernating soldier whether it needs to wake up.
+ */
+public class ThreatMap {
+
+    // The unit moves at most once a turn and only asks about squares next
+    // to it, so this covers every square it asks about in practice.
+    static final int GRID_RADIUS = 3;
+    static final int GRID_SIZE = 2 * GRID_RADIUS + 1;
+
+    UnitController uc;
+    int dangerRadius;
+
+    // The round we last sensed in, and where we were standing.
+    int senseRound = -1;
+    int originX;
+    int originY;
+
+    UnitInfo[] threats = new UnitInfo[16];
+    int numThreats = 0;
+    // How many zombies and enemy units we saw, and how many of those were
+    // zombies and enemy soldiers.
+    int numSensed = 0;
+    int numZombies = 0;
+    int numEnemySoldiers = 0;
+    // For each square of the grid, one more than the index of a threat it is
+    // in danger from, or 0 if it is safe.
+    int[] grid = new int[GRID_SIZE * GRID_SIZE];
+
+    ThreatMap(UnitController uc, int dangerRadius) {
+        this.uc = uc;
+        this.dangerRadius = dangerRadius;
+    }
+
+    // Sense and rebuild the grid if we haven't yet this turn.
+    void update() {
+        int round = uc.getRound();
+        if (round == senseRound)
+            return;
+        senseRound = round;
+        Location curLoc = uc.getLocation();
+        originX = curLoc.x;
+        originY = curLoc.y;
+        for (int i = 0; i < grid.length; i++)
+            grid[i] = 0;
+
+        // Returns enemies and zombies
+        UnitInfo[] units = uc.senseUnits(uc.getTeam(), true, true);
+        Team opponent = uc.getTeam().getOpponent();
+        numThreats = 0;
+        numSensed = units.length;
+        numZombies = 0;
+        numEnemySoldiers = 0;
+        for (int i = 0; i < units.length; i++) {
+            if (units[i].getTeam() == Team.ZOMBIE)
+                numZombies++;
+            else if (units[i].getType() == UnitType.SOLDIER)
+                numEnemySoldiers++;
+            if (units[i].getTeam() != Team.ZOMBIE &&
+                    (units[i].getTeam() != opponent || units[i].getType() != UnitType.FUMIGATOR))
+                continue;
+            if (numThreats == threats.length) {
+                UnitInfo[] bigger = new UnitInfo[threats.length * 2];
+                System.arraycopy(threats, 0, bigger, 0, numThreats);
+                threats = bigger;
+            }
+            threats[numThreats++] = units[i];
+            markThreat(units[i].getLocation(), numThreats);
+        }
+    }
+
+    // Mark the squares of the grid in danger from the given threat.
+    private void markThreat(Location threatLoc, int mark) {
+        int reach = (int) Math.sqrt(dangerRadius);
+        int minX = Math.max(threatLoc.x - reach, originX - GRID_RADIUS);
+        int maxX = Math.min(threatLoc.x + reach, originX + GRID_RADIUS);
+        int minY = Math.max(threatLoc.y - reach, originY - GRID_RADIUS);
+        int maxY = Math.min(threatLoc.y + reach, originY + GRID_RADIUS);
+        for (int x = minX; x <= maxX; x++) {
+            int dx = x - threatLoc.x;
+            int row = (x - originX + GRID_RADIUS) * GRID_SIZE - originY + GRID_RADIUS;
+            for (int y = minY; y <= maxY; y++) {
+                int dy = y - threatLoc.y;
+                if (dx * dx + dy * dy <= dangerRadius && grid[row + y] == 0)
+                    grid[row + y] = mark;
+            }
+        }
+    }
+
+    // The number of threats in sight this turn.
+    int numThreats() {
+        update();
+        return numThreats;
+    }
+
+    int numSensed() {
+        update();
+        return numSensed;
+    }
+
+    int numZombies() {
+        update();
+        return numZombies;
+    }
+
+    int numEnemySoldiers() {
+        update();
+        return numEnemySoldiers;
+    }
+
+    UnitInfo threat(int i) {
+        return threats[i];
+    }
+
+    // Return the location of a threat within dangerRadius of the given
+    // square, or null if there is none.
+    Location threatNear(Location loc) {
+        update();
+        if (numThreats == 0)
+            return null;
+        int gx = loc.x - originX + GRID_RADIUS;
+        int gy = loc.y - originY + GRID_RADIUS;
+        if (gx >= 0 && gx < GRID_SIZE && gy >= 0 && gy < GRID_SIZE) {
+            int mark = grid[gx * GRID_SIZE + gy];
+            return mark == 0 ? null : threats[mark - 1].getLocation();
+        }
+        for (int i = 0; i < numThreats; i++) {
+            if (loc.distanceSquared(threats[i].getLocation()) <= dangerRadius)
+                return threats[i].getLocation();
+        }
+        return null;
+    }
+}
@@ -2,8 +2,6 @@ package ratioplayer;
 
 import aic2020.user.*;
 
-import java.util.*;
-
 /**
  * Abstract unit class, it is implemented by every unit type.
  */
@@ -15,37 +13,44 @@ public abstract class Unit {
     UnitController uc;
 
     /**
-     * Direction values.
+     * Direction values, shared by every unit and never modified.
      */
-    protected ArrayList<Direction> directions;
+    protected Direction[] directions;
 
     /**
      * My id.
      */
     int myID;
 
+    /**
+     * My random number generator.
+     */
+    Rng rng;
+
+    // The base never moves, so once we know where it is we keep it.
+    Location baseLoc = null;
+
     // We specify a target number of each unit to build over the course
     // of the game. This is a rather primitive AI, but it is useful for testing.
-    int targetFarms = 0;
-    int targetLaboratories = 2;
-    int targetBarracks = 2;
-    int targetHospital = 0;
-    int targetMarket = 0;
-    int targetWorker = 3;
-    int targetFumigator = 2;
-    int targetInfecter = 2;
-    int targetSoldier = 20;
-
-    // Count of how many fumigators have been built this game. Used to assign
-    // fumigatorIDs.
-    int numFumigators = 0;
+    // Indexed by the *_INDEX counter of each unit: farms, laboratories,
+    // barracks, hospitals, markets, workers, fumigators, infecters and
+    // soldiers.
+    int[] buildTargets = {0, 2, 2, 0, 0, 3, 2, 2, 20};
 
     // We attempt to build workers, soldiers, and fumigators in the given ratios.
     // For instance, here for every 2 workers we build, we expect to build 8
-    // soldiers and 3 fumigators.
+    // soldiers and 3 fumigators. These are where the ratios start; the base
+    // adjusts them over the game (see updateProduction()).
     int workerRatio = 2;
     int soldierRatio = 8;
     int fumigatorRatio = 3;
+    // How often, in rounds, the base updates the ratios.
+    static final int PRODUCTION_INTERVAL = 20;
+    // A structure waiting for PRODUCTION_VERSION to change also looks again
+    // when workers deposit food, and after this many rounds in any case,
+    // since food comes in other ways too and some build order steps wait
+    // for a round or for zombies to be seen.
+    static final int PRODUCTION_RETRY = 5;
 
     int fumigatorRadius = 15;
 
@@ -62,10 +67,12 @@ public abstract class Unit {
     // The radius around which the location of a zombie should be considered
     // 'near' a zombie.
     protected int zombieDangerRadius = 9;
-    // The last round for which this unit has updated their infected locations.
-    protected int lastRoundUpdatedInfected = 0;
-    // The last round for which this unit has updated their fumigated locations.
-    protected int lastRoundUpdatedFumigated = 0;
+    // The absolute index of the next infected journal entry this unit has
+    // not yet read.
+    protected int infectedCursor = 0;
+    // The absolute index of the next fumigated journal entry this unit has
+    // not yet read.
+    protected int fumigatedCursor = 0;
 
     // These variables are all for management of the shared array. They denote
     // the index of the array at which the relevant information is stored.
@@ -92,43 +99,235 @@ public abstract class Unit {
     final protected int PRIMARY_FARM_MIN_Y = 16;
     final protected int PRIMARY_FARM_MAX_Y = 17;
 
-    final protected int WORKERS_BUILT = 18;
-    final protected int SOLDIERS_BUILT = 19;
-    final protected int FUMIGATORS_BUILT = 20;
+    // Bumped whenever something changes which decides what structures
+    // should build: a unit is built, the build order moves on, or the base
+    // publishes a different build decision. Structures with nothing to build
+    // wait for it to change rather than working out again every turn that
+    // they have nothing to build.
+    final protected int PRODUCTION_VERSION = 18;
 
-    final protected int INFECTED_SQUARES_END = 21;
-    final protected int FUMIGATED_SQUARES_END = 22;
+    final protected int INFECTED_SQUARES_HEAD = 21;
+    final protected int FUMIGATED_SQUARES_HEAD = 22;
 
     final protected int SAFE_RADIUS = 23;
 
-    // We store arrays of squares which are known to be infected or fumigated
+    final protected int INFECTED_SQUARES_TAIL = 24;
+    final protected int FUMIGATED_SQUARES_TAIL = 25;
+
+    final protected int INFECTED_SQUARES_GENERATION = 26;
+    final protected int FUMIGATED_SQUARES_GENERATION = 27;
+
+    // The production controller. Units report what they see into the
+    // *_SIGHTED and FOOD_DEPOSITS slots, which the base reads and clears every
+    // PRODUCTION_INTERVAL rounds. From them it keeps smoothed *_PRESSURE
+    // values, sets the ratios we build workers, soldiers and fumigators in
+    // (the *_WEIGHT slots), and publishes in BUILD_DECISION the ordinal of the
+    // UnitType to build next, plus one. Every unit which spawns workers,
+    // soldiers or fumigators builds only what BUILD_DECISION says.
+    //
+    // ZOMBIES_SIGHTED and ENEMIES_SIGHTED hold the most zombies and enemy
+    // soldiers any one unit saw at once, rather than a total, so that a
+    // zombie isn't counted once for every unit which saw it. A builder which
+    // fails to spawn the decided unit because every square around it is
+    // taken writes the round, plus one, in the SPAWN_BLOCKED_* slot for that
+    // type, so that the base can pick something else for a while.
+    final protected int ZOMBIES_SIGHTED = 28;
+    final protected int ENEMIES_SIGHTED = 29;
+    final protected int FOOD_DEPOSITS = 30;
+    final protected int ZOMBIE_PRESSURE = 31;
+    final protected int ENEMY_PRESSURE = 32;
+    final protected int INFECTION_PRESSURE = 33;
+    final protected int INCOME_RATE = 34;
+    final protected int WORKER_WEIGHT = 35;
+    final protected int SOLDIER_WEIGHT = 36;
+    final protected int FUMIGATOR_WEIGHT = 37;
+    final protected int BUILD_DECISION = 38;
+    final protected int SPAWN_BLOCKED_WORKER = 39;
+    final protected int SPAWN_BLOCKED_SOLDIER = 40;
+    final protected int SPAWN_BLOCKED_FUMIGATOR = 41;
+
+    // Some structures have to come before any more units. Until the primary
+    // worker's market is up no food comes in, and soldiers need a barracks.
+    // While one of them is wanted, the base publishes it as the build
+    // decision, which holds back every unit spawn so that food builds up for
+    // it. A worker waiting to build it writes the round, plus one, in its
+    // *_BUILDER_SEEN slot, and if none has for PRODUCTION_RETRY rounds the
+    // base goes back to spawning units. These reuse slots 19 and 20, which
+    // held SOLDIERS_BUILT and FUMIGATORS_BUILT until the ratios moved to the
+    // *_INDEX counters.
+    final protected int BARRACKS_BUILDER_SEEN = 19;
+    final protected int MARKET_BUILDER_SEEN = 20;
+
+    // Build tickets. Before spawning a unit or building a farm, a builder
+    // claims the ticket for that type, one slot per *_INDEX counter starting
+    // at BUILD_TICKETS_START. A ticket holds the round it was claimed in,
+    // plus one, in its high bits and the builder's ID in its low 16 bits, and
+    // 0 once it is released. While one builder holds a ticket no other will
+    // build that type, and the holder updates the counters before releasing
+    // it, so every builder decides from counts which include every unit
+    // already spawned. A builder which runs out of energy between claiming
+    // and releasing finishes its turn in the next round, so a ticket stays
+    // held through the round after it was claimed and lapses after that.
+    final protected int BUILD_TICKETS_START = 42;
+    final protected int TICKET_ID_MASK = 0xFFFF;
+
+    // The fumigatorID the next fumigator will take. Each fumigator reads and
+    // bumps it once, when it is constructed.
+    final protected int NEXT_FUMIGATOR_ID = 51;
+
+    // Units read the slots below HEADER_SIZE through readHeader() and
+    // writeHeader(), which keep a snapshot taken the first time each slot is
+    // read in a turn. No other unit runs during our turn, so the snapshot
+    // stays correct as long as our own writes go through writeHeader(). A
+    // turn which runs out of energy part way through carries on with the
+    // snapshot from its first round, which is fine for deciding what to do
+    // but would lose other units' updates if we wrote back a value computed
+    // from it. So every read-modify-write of a header slot reads the shared
+    // array directly, through readHeaderFresh() or incrementHeader(). The
+    // journal heads, tails and
+    // generations, the build tickets and NEXT_FUMIGATOR_ID must always be
+    // current, so those are read and written directly instead.
+    final protected int HEADER_SIZE = 42;
+
+    // Our snapshot of the header of the shared array; see readHeader().
+    int[] header = new int[HEADER_SIZE];
+    // The turn each slot of header was read in, and the current turn. Turns
+    // start at 1, so that reads made while the unit is constructed are
+    // cached as well.
+    int[] headerTurn = new int[HEADER_SIZE];
+    int turn = 1;
+
+    // We store journals of squares which are known to be infected or fumigated
     // in the shared array, beginning at INFECTED_SQUARES_START and at
-    // FUMIGATED_SQUARES_START. The ends of the arrays are at the values stored
-    // in INFECTED_SQUARE_END and FUMIGATED_SQUARES_END. In this way units can
-    // communicate between each other when squares are known to be infected,
-    // ie if a unit sees a zombie, it knows that all squares around it are
-    // infected, it can tell all other units that those square are infected by
-    // adding them starting at INFECTED_SQUARES_START, and all units can know
-    // that despite that zombie not being within their vision. Likewise, once a
-    // fumigator has visited those squares, they are able to tell other units
-    // that those squares are now safe, even though the other units are
-    // not able to observe this for themselves.
+    // FUMIGATED_SQUARES_START. In this way units can communicate between each
+    // other when squares are known to be infected, ie if a unit sees a zombie,
+    // it knows that all squares around it are infected, it can tell all other
+    // units that those square are infected by adding them to the infected
+    // journal, and all units can know that despite that zombie not being
+    // within their vision. Likewise, once a fumigator has visited those
+    // squares, they are able to tell other units that those squares are now
+    // safe, even though the other units are not able to observe this for
+    // themselves.
     //
-    // Squares are added in triplets in the form, (round, x, y), where round is
-    // the current round number. In this way units can know if they have
-    // already accounted for this information or now (they may have timed out
-    // on a previous round).
+    // Each journal is a ring buffer of JOURNAL_CAPACITY entries. The head and
+    // tail stored at the *_HEAD and *_TAIL indices are absolute entry counts
+    // which only ever grow; entry i lives at journalSlot(start, i). Writers
+    // append at the tail, and each unit keeps its own cursor into the journal
+    // so that it only reads entries it has not seen yet. Whenever entries are
+    // dropped before they expire, the *_GENERATION counter is bumped. Readers
+    // don't need it: a dropped entry is behind the head, like an expired one,
+    // so a reader whose cursor fell behind the head just moves up to it.
     //
-    // The base performs logic to remove obsolete data from this array each round.
+    // Each entry is a single int, packed by encodeJournalEntry() from the
+    // round it was written in and the square's coordinates modulo 256 (see
+    // below). The base expires entries which are two or more rounds old by
+    // moving the head forward; nothing is ever copied. If a journal fills up,
+    // the writer drops the oldest entry instead.
     final protected int INFECTED_SQUARES_START = 70;
     final protected int FUMIGATED_SQUARES_START = 500000;
-
-    HashSet<MyLocation> infectedLocations;
+    final protected int JOURNAL_CAPACITY = 300000;
+
+    // A journal entry holds the round in bits 16 to 30, and the low eight
+    // bits of x and of y in bits 8 to 15 and 0 to 7. Maps are smaller than
+    // 128 squares across, so every square on the map is within 128 squares
+    // of the base in each direction, and the full coordinates can be
+    // recovered from the low bits and the base's location.
+    final protected int ENTRY_ROUND_SHIFT = 16;
+    final protected int ENTRY_X_SHIFT = 8;
+    final protected int ENTRY_COORD_MASK = 255;
+
+    // The infected flags: a full slot for each square, not a packed bitmap,
+    // so 256 x 256 slots from INFECTED_FLAGS_START, past the end of the
+    // fumigated journal. Square (x, y) has slot (x & 255) * 256 + (y & 255)
+    // from there; see infectedFlagSlot(). A square's flag holds the round of
+    // its live entry in the infected journal, plus one, and is 0 while it
+    // has none, so that the base can tell which entry set it. Writers set
+    // the flag when they append an entry and skip any square whose flag is
+    // already set, so a square seen by many units at once is only written
+    // once. The flag is cleared when the square is fumigated, after which
+    // the square may be written again, and when the base expires the entry
+    // which set it. An entry which has been fumigated and written again
+    // since leaves it alone.
+    final protected int INFECTED_FLAGS_START = 800000;
+
+    // Infected squares are grouped into square cells of CELL_SIZE tiles on a
+    // side, so that a fumigator can claim and clear a whole cell in one trip.
+    // Coordinates are taken modulo 256 (maps are smaller than that), which
+    // gives 64 x 64 cells. Each cell has a claim of two slots starting at
+    // CELL_CLAIMS_START, holding the ID of the fumigator which claimed it and
+    // the round it last renewed its claim. A claim which has not been renewed
+    // for CLAIM_TIMEOUT rounds is free to be taken over.
+    final protected int CELL_SIZE = 4;
+    final protected int CELLS_PER_SIDE = 64;
+    final protected int CELL_CLAIMS_START = 300100;
+    final protected int CLAIM_TIMEOUT = 20;
+
+    // Routes between common waypoints are shared through a RouteCache
+    // beginning at this index.
+    final protected int ROUTE_CACHE_START = 310000;
+
+    // The map is divided into regions of REGION_SIZE squares on a side,
+    // again taking coordinates modulo 256, and each region has a version
+    // counter starting at REGION_VERSIONS_START. Every write to the infected
+    // or fumigated journal bumps the version of the region the square is in,
+    // so a unit which only cares about one region can tell whether anything
+    // has changed there with a single read.
+    final protected int REGION_SIZE = 16;
+    final protected int REGIONS_PER_SIDE = 16;
+    final protected int REGION_VERSIONS_START = 323000;
+
+    LocationSet infectedLocations;
     int failedMoveTowards = 0;
 
-    // We hardcode the order which the first units which should be built
-    // each game, before moving to a more dynamic approach.
-    protected String[] buildOrder = {"worker", "worker", "barracks"};
+    // For a structure, the PRODUCTION_VERSION and FOOD_DEPOSITS it last
+    // decided what to build from, and the round it should look again in
+    // regardless.
+    int productionVersionSeen = -1;
+    int depositsSeen = 0;
+    int productionRetryRound = 0;
+
+    // The region we last bumped the version of, and the turn we did it in.
+    // A unit usually writes several squares of the same region in one turn,
+    // and one bump is enough for those.
+    int lastBumpedRegion = -1;
+    int lastBumpedTurn = 0;
+
+    // The zombies and enemy fumigators in sight this turn, sensed once and
+    // shared by every check which needs them.
+    ThreatMap threatMap;
+
+    // Obstacle-aware pathfinding, for units which move. Structures leave
+    // this null.
+    PathFinder pathFinder = null;
+
+    // A unit's turn is split into tasks, which are run in this order of
+    // priority. Before starting each task we check that we have enough energy
+    // left for it; if we don't, the task is skipped until a later turn.
+    // Running out of energy part way through a task is what leaves the shared
+    // array in a bad state, so tasks which may take a lot of work (reading
+    // the journals, expiring journal entries) also stop early when energy is
+    // low and pick up from a saved cursor on the next turn.
+    final protected int TASK_ATTACK = 0;
+    final protected int TASK_MOVE = 1;
+    final protected int TASK_BUILD = 2;
+    final protected int TASK_WRITE_INTEL = 3;
+    final protected int TASK_READ_INTEL = 4;
+    final protected int TASK_HOUSEKEEPING = 5;
+    final protected int NUM_TASKS = 6;
+
+    // A rough upper bound on the energy each task needs to run to completion.
+    protected int[] taskEnergy = {300, 1500, 1500, 1000, 500, 500};
+    // The energy we keep in reserve while looping over a resumable job, so
+    // that we can always leave the shared array in a sane state.
+    protected int jobStepEnergy = 150;
+
+    // The order which the first units should be built in each game, before
+    // moving to a more dynamic approach. See BuildOrder for the encoding.
+    protected int[] buildOrder = {
+            BuildOrder.step(WORKER_INDEX),
+            BuildOrder.step(WORKER_INDEX),
+            BuildOrder.step(BARRACKS_INDEX)
+    };
 
     /**
      * Constructor
@@ -136,30 +335,70 @@ public abstract class Unit {
     Unit(UnitController uc){
         this.uc = uc;
         this.myID = uc.getInfo().getID();
-        directions = new ArrayList<Direction>();
-        for (Direction dir : Direction.values()) {
-            directions.add(dir);
+        directions = DirectionOrders.ALL_DIRECTIONS;
+        rng = new Rng(myID, uc.getRound());
+        infectedLocations = new LocationSet();
+        threatMap = new ThreatMap(uc, zombieDangerRadius);
+    }
+
+    /**
+     * Called at the start of each turn, before play(), to drop the header
+     * snapshot taken last turn.
+     */
+    void startTurn() {
+        turn++;
+    }
+
+    /**
+     * Play method. By default it runs each task of this unit's turn in order
+     * of priority, as long as we have the energy for it. Unit types with very
+     * simple turns may override it instead.
+     */
+    void play() {
+        for (int task = 0; task < NUM_TASKS; task++) {
+            if (startTask(task))
+                runTask(task);
         }
-        infectedLocations = new HashSet<MyLocation>();
     }
 
     /**
-     * Play method. It is implemented by each unit type.
+     * Run a single task of this unit's turn. It is implemented by each unit
+     * type which uses the default play method.
      */
-    abstract void play();
+    void runTask(int task) {}
 
-    // Randomize the order of the directions array so that behavior is non-
-    // deterministic (ie, so that randomly walking units don't always run
-    // directly north).
-    protected void shuffleDirections() {
-        for (int i = 0; i < directions.size() - 2; i++) {
-            int rand = (int) (Math.random() * (directions.size() - i));
-            rand += i;
+    // Set up pathfinding for this unit, starting with the distance field
+    // to the base.
+    protected void initPathFinder() {
+        pathFinder = new PathFinder(uc, baseLocation().x, baseLocation().y,
+                new RouteCache(uc, ROUTE_CACHE_START));
+    }
 
-            Direction tmp = directions.get(i);
-            directions.set(i, directions.get(rand));
-            directions.set(rand, tmp);
-        }
+    // Spend whatever energy we have left this turn building our distance
+    // fields.
+    protected void expandPathFinder() {
+        if (pathFinder != null)
+            pathFinder.expand(jobStepEnergy);
+    }
+
+    // Return whether we have enough energy left this turn to run the given
+    // task. If not, the task waits until a later turn.
+    protected boolean startTask(int task) {
+        return uc.getEnergyLeft() >= taskEnergy[task];
+    }
+
+    // Return whether we have enough energy left to do another step of a
+    // resumable job this turn.
+    protected boolean canContinueJob() {
+        return uc.getEnergyLeft() >= jobStepEnergy;
+    }
+
+    // Return the eight directions other than ZERO in a random order, so
+    // that behavior is varied (ie, so that randomly walking units don't
+    // always run directly north). The array is shared and must not be
+    // modified.
+    protected Direction[] randomDirectionOrder() {
+        return DirectionOrders.ADJACENT[rng.nextInt(DirectionOrders.NUM_ORDERS)];
     }
 
     // Make sure the initial location of the base is accessible by all units
@@ -167,304 +406,533 @@ public abstract class Unit {
     public void setBaseLocation() {
         uc.write(BASE_LOC_X, uc.getLocation().x);
         uc.write(BASE_LOC_Y, uc.getLocation().y);
+        baseLoc = uc.getLocation();
+    }
+
+    // Return the location of the base, reading it from the shared array the
+    // first time only.
+    protected Location baseLocation() {
+        if (baseLoc == null)
+            baseLoc = new Location(uc.read(BASE_LOC_X), uc.read(BASE_LOC_Y));
+        return baseLoc;
+    }
+
+    // Return the value of the given header slot, as of the first time we
+    // read it this turn, or as we last wrote it.
+    protected int readHeader(int slot) {
+        if (headerTurn[slot] != turn) {
+            header[slot] = uc.read(slot);
+            headerTurn[slot] = turn;
+        }
+        return header[slot];
+    }
+
+    // Return the current value of the given header slot, straight from the
+    // shared array, and update our snapshot with it. Used whenever we are
+    // going to write back a value based on what we read.
+    protected int readHeaderFresh(int slot) {
+        header[slot] = uc.read(slot);
+        headerTurn[slot] = turn;
+        return header[slot];
+    }
+
+    // Add one to the given header slot.
+    protected void incrementHeader(int slot) {
+        writeHeader(slot, readHeaderFresh(slot) + 1);
+    }
+
+    // Write the given header slot, through to the shared array.
+    protected void writeHeader(int slot, int value) {
+        uc.write(slot, value);
+        header[slot] = value;
+        headerTurn[slot] = turn;
     }
 
     // Make sure the initial safe radius around the base is accessible by
     // all units.
     public void setInitialSafeRadius() {
-        uc.write(SAFE_RADIUS, initialSafeRadius);
+        writeHeader(SAFE_RADIUS, initialSafeRadius);
     }
 
-    // Initialize the arrays used to store infected and fumigated squares
+    // Initialize the journals used to store infected and fumigated squares
     // in the shared array.
     public void initializeInfectedSquares() {
-        uc.write(INFECTED_SQUARES_START, -1);
-        uc.write(FUMIGATED_SQUARES_START, -1);
+        uc.write(INFECTED_SQUARES_HEAD, 0);
+        uc.write(INFECTED_SQUARES_TAIL, 0);
+        uc.write(FUMIGATED_SQUARES_HEAD, 0);
+        uc.write(FUMIGATED_SQUARES_TAIL, 0);
+        uc.write(INFECTED_SQUARES_GENERATION, 0);
+        uc.write(FUMIGATED_SQUARES_GENERATION, 0);
+    }
+
+    // Return the index in the shared array of the given absolute journal
+    // entry.
+    protected int journalSlot(int start, int entry) {
+        return start + entry % JOURNAL_CAPACITY;
+    }
+
+    // Pack a journal entry for the given square, written in the given round.
+    protected int encodeJournalEntry(int round, int x, int y) {
+        return (round << ENTRY_ROUND_SHIFT) | ((x & ENTRY_COORD_MASK) << ENTRY_X_SHIFT) |
+                (y & ENTRY_COORD_MASK);
+    }
+
+    protected int decodeEntryRound(int entry) {
+        return entry >>> ENTRY_ROUND_SHIFT;
+    }
+
+    // Return the x coordinate of an entry's square, given the x coordinate
+    // of the base. We take the coordinate within 128 of the base's which has
+    // the entry's low bits.
+    protected int decodeEntryX(int entry, int baseX) {
+        int dx = ((entry >>> ENTRY_X_SHIFT) - baseX + 128) & ENTRY_COORD_MASK;
+        return baseX + dx - 128;
+    }
+
+    protected int decodeEntryY(int entry, int baseY) {
+        int dy = (entry - baseY + 128) & ENTRY_COORD_MASK;
+        return baseY + dy - 128;
+    }
+
+    // Append an entry for (x, y) to the journal beginning at start. If the
+    // journal is full, the oldest entry is dropped to make room and the
+    // journal's generation is bumped.
+    protected void appendJournal(int start, int headIndex, int tailIndex,
+                                 int generationIndex, int x, int y) {
+        int tail = uc.read(tailIndex);
+        int head = uc.read(headIndex);
+        if (tail - head >= JOURNAL_CAPACITY) {
+            uc.write(headIndex, head + 1);
+            uc.write(generationIndex, uc.read(generationIndex) + 1);
+        }
+        uc.write(journalSlot(start, tail), encodeJournalEntry(uc.getRound(), x, y));
+        uc.write(tailIndex, tail + 1);
+        bumpRegionVersion(x, y);
+    }
+
+    // Return the index in the shared array of the version counter of the
+    // region containing the given square.
+    protected int regionVersionSlot(int x, int y) {
+        return REGION_VERSIONS_START + ((x & 255) / REGION_SIZE) * REGIONS_PER_SIDE + (y & 255) / REGION_SIZE;
+    }
+
+    // Let units watching the region containing the given square know that
+    // something has changed there.
+    protected void bumpRegionVersion(int x, int y) {
+        int slot = regionVersionSlot(x, y);
+        if (slot == lastBumpedRegion && turn == lastBumpedTurn)
+            return;
+        lastBumpedRegion = slot;
+        lastBumpedTurn = turn;
+        uc.write(slot, uc.read(slot) + 1);
+    }
+
+    // Return whether we have read every entry of both journals.
+    protected boolean isIntelCurrent() {
+        return infectedCursor == uc.read(INFECTED_SQUARES_TAIL) &&
+                fumigatedCursor == uc.read(FUMIGATED_SQUARES_TAIL);
+    }
+
+    // Return the index in the shared array of the slot holding the given
+    // square's infected flag.
+    protected int infectedFlagSlot(int x, int y) {
+        return INFECTED_FLAGS_START + ((x & 255) << 8) + (y & 255);
+    }
+
+    // Set the infected flag for the given square. Returns false if it was
+    // already set, ie someone has already written an entry for the square.
+    protected boolean flagInfected(int x, int y) {
+        int slot = infectedFlagSlot(x, y);
+        if (uc.read(slot) != 0)
+            return false;
+        uc.write(slot, uc.getRound() + 1);
+        return true;
+    }
+
+    protected void unflagInfected(int x, int y) {
+        int slot = infectedFlagSlot(x, y);
+        if (uc.read(slot) != 0)
+            uc.write(slot, 0);
+    }
 
-        uc.write(INFECTED_SQUARES_END, INFECTED_SQUARES_START);
-        uc.write(FUMIGATED_SQUARES_END, FUMIGATED_SQUARES_START);
+    // Clear the infected flag for the given square if it was set by an
+    // entry from the given round.
+    protected void unflagInfected(int x, int y, int round) {
+        int slot = infectedFlagSlot(x, y);
+        if (uc.read(slot) == round + 1)
+            uc.write(slot, 0);
     }
 
     // Return whether the given location is known, by this unit, to
     // be infected.
     protected boolean isKnownInfected(Location loc) {
-        if (infectedLocations.contains(new MyLocation(loc.x, loc.y))) {
-            return true;
-        }
-        return false;
+        return infectedLocations.contains(loc);
     }
 
     // This location is now known to be not infected, so remove it from
     // the set of locations that this unit knows to be infected.
     protected void removeInfected(Location loc) {
-        infectedLocations.remove(new MyLocation(loc.x, loc.y));
+        infectedLocations.remove(loc);
     }
 
-    // Iterate through the shared array and find all locations that other
-    // units have found to be infected, then update infectedLocations with
-    // those locations.
+    // Read all entries of the infected journal that this unit has not seen
+    // yet, and add those locations to infectedLocations. On a quiet turn this
+    // costs a single read of the tail.
     protected void updateInfected() {
-        int index = INFECTED_SQUARES_START;
-        int val = uc.read(index);
-        while (val != -1) {
-            if (val == -2) {
-                // do nothing
-            }
-            else if (lastRoundUpdatedInfected <= val) {
-                int x = uc.read(index+1);
-                int y = uc.read(index+2);
-                infectedLocations.add(new MyLocation(x, y));
-            }
-            index += 3;
-            val = uc.read(index);
-            if (index >= FUMIGATED_SQUARES_START)
-                break;
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        int tail = uc.read(INFECTED_SQUARES_TAIL);
+        if (infectedCursor == tail) {
+            if (Profiler.ENABLED) Profiler.stop(uc, Profiler.UPDATE_INFECTED, profile);
+            return;
+        }
+
+        // Skip any entries which have expired or been dropped since we last
+        // read. If the journal was reset, start again from its oldest entry.
+        int head = uc.read(INFECTED_SQUARES_HEAD);
+        if (infectedCursor > tail || infectedCursor < head)
+            infectedCursor = head;
+        // Stop early if we run low on energy; our cursor is saved, so we
+        // carry on from here next turn.
+        int baseX = baseLocation().x;
+        int baseY = baseLocation().y;
+        while (infectedCursor < tail && canContinueJob()) {
+            int entry = uc.read(journalSlot(INFECTED_SQUARES_START, infectedCursor));
+            infectedLocations.add(decodeEntryX(entry, baseX), decodeEntryY(entry, baseY));
+            infectedCursor++;
         }
-        lastRoundUpdatedInfected = uc.getRound();
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.UPDATE_INFECTED, profile);
     }
 
-    // Iterate through the shared array and find all locations that other
-    // units have found to be fumigated, then update infectedLocations to
-    // remove those locations.
+    // Read all entries of the fumigated journal that this unit has not seen
+    // yet, and remove those locations from infectedLocations. On a quiet turn
+    // this costs a single read of the tail.
     protected void updateFumigated() {
-        int index = FUMIGATED_SQUARES_START;
-        int val = uc.read(index);
-        while (val != -1) {
-            if (val == -2) {
-                // do nothing
-            }
-            else if (lastRoundUpdatedFumigated <= val) {
-                int x = uc.read(index+1);
-                int y = uc.read(index+2);
-                infectedLocations.remove(new MyLocation(x, y));
-            }
-            index += 3;
-            val = uc.read(index);
-            if (index >= 1000000)
-                break;
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        int tail = uc.read(FUMIGATED_SQUARES_TAIL);
+        if (fumigatedCursor == tail) {
+            if (Profiler.ENABLED) Profiler.stop(uc, Profiler.UPDATE_FUMIGATED, profile);
+            return;
         }
-        lastRoundUpdatedFumigated = uc.getRound();
+
+        // Skip any entries which have expired or been dropped since we last
+        // read. If the journal was reset, start again from its oldest entry.
+        int head = uc.read(FUMIGATED_SQUARES_HEAD);
+        if (fumigatedCursor > tail || fumigatedCursor < head)
+            fumigatedCursor = head;
+        // Stop early if we run low on energy; our cursor is saved, so we
+        // carry on from here next turn.
+        int baseX = baseLocation().x;
+        int baseY = baseLocation().y;
+        while (fumigatedCursor < tail && canContinueJob()) {
+            int entry = uc.read(journalSlot(FUMIGATED_SQUARES_START, fumigatedCursor));
+            infectedLocations.remove(decodeEntryX(entry, baseX), decodeEntryY(entry, baseY));
+            fumigatedCursor++;
+        }
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.UPDATE_FUMIGATED, profile);
     }
 
     // Check to see if there are any zombies or enemy fumigators in vision. If
     // there are, mark their locations, and all adjacent locations, as infected
     // in the shared array.
     protected void writeInfected() {
-        // Returns enemies and zombies
-        UnitInfo[] units = uc.senseUnits(uc.getTeam(), true, true);
-        for (int i = 0; i < units.length; i++) {
-            // If the unit is a zombie or enemy fumigator
-            if (units[i].getTeam() == Team.ZOMBIE ||
-                    (units[i].getTeam() == uc.getTeam().getOpponent() &&
-                      units[i].getType() == UnitType.FUMIGATOR)) {
-                Location enemyLoc = units[i].getLocation();
-                for (Direction dir : directions) {
-                    if (!isKnownInfected(enemyLoc.add(dir))) {
-                        int endIndex = uc.read(INFECTED_SQUARES_END);
-
-                        uc.write(endIndex, uc.getRound());
-                        uc.write(endIndex+1, enemyLoc.add(dir).x);
-                        uc.write(endIndex+2, enemyLoc.add(dir).y);
-                        uc.write(endIndex+3, -1);
-                        uc.write(INFECTED_SQUARES_END, endIndex+3);
-                    }
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        int numThreats = threatMap.numThreats();
+        for (int i = 0; i < numThreats; i++) {
+            Location enemyLoc = threatMap.threat(i).getLocation();
+            for (Direction dir : directions) {
+                // An entry only becomes visible once the tail is written,
+                // so stopping here never leaves a partial entry behind.
+                if (!canContinueJob()) {
+                    if (Profiler.ENABLED) Profiler.stop(uc, Profiler.WRITE_INFECTED, profile);
+                    return;
+                }
+                Location loc = enemyLoc.add(dir);
+                if (!isKnownInfected(loc) && flagInfected(loc.x, loc.y)) {
+                    appendJournal(INFECTED_SQUARES_START, INFECTED_SQUARES_HEAD,
+                            INFECTED_SQUARES_TAIL, INFECTED_SQUARES_GENERATION,
+                            loc.x, loc.y);
                 }
             }
         }
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.WRITE_INFECTED, profile);
+    }
+
+    // Return the index of the cell containing the given square.
+    protected int cellIndex(int x, int y) {
+        return ((x & 255) / CELL_SIZE) * CELLS_PER_SIDE + (y & 255) / CELL_SIZE;
+    }
+
+    // Return the index in the shared array of the claim for the given cell.
+    protected int cellClaimSlot(int cell) {
+        return CELL_CLAIMS_START + cell * 2;
     }
 
     // Utility method to get the direction which best points from the current
     // unit's location towards the base.
     protected Direction getDirectionTowardsBase() {
         Location curLoc = uc.getLocation();
-        Location baseLoc = new Location(uc.read(BASE_LOC_X), uc.read(BASE_LOC_Y));
+        Location baseLoc = baseLocation();
+        // Follow the distance field around any obstacles, if it has reached us.
+        if (pathFinder != null) {
+            Direction dir = pathFinder.nextStep(baseLoc.x, baseLoc.y);
+            if (dir != null)
+                return dir;
+        }
         return curLoc.directionTo(baseLoc);
     }
 
-    // Returns whether the next unit in the global build order is the
-    // given UnitType.
-    //
-    // Unfortunately, Farm is not a UnitType, because it does not have a
-    // team affiliation, so we need to special-case it here.
-    // TODO: Investigate a better way to handle this.
-    protected boolean shouldCreateUnitFromBuildOrder(UnitType type, boolean isFarm) {
-        int buildNum = uc.read(CURRENT_BUILD_INDEX);
-        if (isFarm) {
-            if (buildOrder[buildNum].equals("farm"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.LABORATORY) {
-            if (buildOrder[buildNum].equals("laboratory"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.HOSPITAL) {
-            if (buildOrder[buildNum].equals("hospital"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.BARRACKS) {
-            if (buildOrder[buildNum].equals("barracks"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.MARKET) {
-            if (buildOrder[buildNum].equals("market"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.ESSENTIAL_WORKER) {
-            if (buildOrder[buildNum].equals("worker"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.FUMIGATOR) {
-            if (buildOrder[buildNum].equals("fumigator"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.INFECTER) {
-            if (buildOrder[buildNum].equals("infecter"))
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.SOLDIER) {
-            if (buildOrder[buildNum].equals("soldier"))
-                return true;
-            else
-                return false;
-        }
+    // Returns whether the given build order step can be built now.
+    protected boolean isBuildStepReady(int step) {
+        int condition = BuildOrder.condition(step);
+        if (condition == BuildOrder.COND_ALWAYS)
+            return true;
+        int value = BuildOrder.value(step);
+        if (condition == BuildOrder.COND_AFTER_BUILT)
+            return readHeader(BuildOrder.condKind(step)) >= value;
+        if (condition == BuildOrder.COND_ZOMBIES_SEEN)
+            return Math.max(readHeader(ZOMBIES_SIGHTED), readHeader(ZOMBIE_PRESSURE)) >= value;
+        if (condition == BuildOrder.COND_AFTER_ROUND)
+            return uc.getRound() >= value;
         return false;
     }
 
-    // Returns whether we should build the given UnitType based upon the global
-    // target numbers for each unit. For instance, if we have built 3 soldiers,
-    // but targetSoldier is 5, this method will return true for UnitType soldier.
-    //
-    // Unfortunately, Farm is not a UnitType, because it does not have a
-    // team affiliation, so we need to special-case it here.
-    // TODO: Investigate a better way to handle this.
-    protected boolean shouldCreateUnitFromTargetThresholds(UnitType type, boolean isFarm) {
-        if (isFarm) {
-            if (uc.read(FARM_INDEX) < targetFarms)
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.LABORATORY) {
-            if (uc.read(LABORATORY_INDEX) < targetLaboratories)
-                return true;
-            else
-                return false;
-        }
-        else if (type == UnitType.HOSPITAL) {
-            if (uc.read(HOSPITAL_INDEX) < targetHospital)
-                return true;
-            else
-                return false;
+    // Move past any skippable steps at the head of the build order whose
+    // conditions don't hold.
+    protected void skipUnreadyBuildSteps() {
+        int buildNum = readHeaderFresh(CURRENT_BUILD_INDEX);
+        int oldBuildNum = buildNum;
+        while (buildNum < buildOrder.length && BuildOrder.isSkippable(buildOrder[buildNum]) &&
+                !isBuildStepReady(buildOrder[buildNum]))
+            buildNum++;
+        if (buildNum != oldBuildNum) {
+            writeHeader(CURRENT_BUILD_INDEX, buildNum);
+            bumpProductionVersion();
         }
-        else if (type == UnitType.BARRACKS) {
-            int foo = uc.read(BARRACKS_INDEX);
-            if (uc.read(BARRACKS_INDEX) < targetBarracks)
-                return true;
-            else
-                return false;
+    }
+
+    // Determine whether we should build the unit with the given *_INDEX
+    // counter. While we are following the build order, that's whether it is
+    // the next step and the step is ready. Once we have exhausted the build
+    // order, it's whether we have built fewer than its target number.
+    protected boolean shouldCreateUnit(int kind) {
+        int buildNum = readHeader(CURRENT_BUILD_INDEX);
+        if (buildNum < buildOrder.length) {
+            int step = buildOrder[buildNum];
+            return BuildOrder.kind(step) == kind && isBuildStepReady(step);
         }
-        else if (type == UnitType.MARKET) {
-            if (uc.read(MARKET_INDEX) < targetMarket)
-                return true;
-            else
-                return false;
+        return readHeader(kind) < buildTargets[kind];
+    }
+
+    // We create Soldiers, Fumigators, and Essential Workers in the ratios
+    // the base publishes in the shared array. This method returns whether the
+    // given UnitType is the one the base has decided should be built next,
+    // to move us closer to those ratios.
+    protected boolean shouldCreateUnitRatio(UnitType type) {
+        return readHeader(BUILD_DECISION) == type.ordinal() + 1;
+    }
+
+    // Publish the unit type which is furthest behind its share of what we've
+    // built, relative to the current weights. Ties go to workers, then
+    // soldiers. We leave out any type whose builder reported in the last
+    // PRODUCTION_INTERVAL rounds that it is boxed in, since otherwise we
+    // would save food for a unit that never comes. A structure which has to
+    // come first goes ahead of all of them (see BARRACKS_BUILDER_SEEN).
+    protected void publishBuildDecision() {
+        int round = uc.getRound();
+        int workers = readHeader(WORKER_INDEX);
+        int soldiers = readHeader(SOLDIER_INDEX);
+        int fumigators = readHeader(FUMIGATOR_INDEX);
+        int workerWeight = isSpawnBlocked(UnitType.ESSENTIAL_WORKER, round) ? 0 : readHeader(WORKER_WEIGHT);
+        int soldierWeight = isSpawnBlocked(UnitType.SOLDIER, round) ? 0 : readHeader(SOLDIER_WEIGHT);
+        int fumigatorWeight = isSpawnBlocked(UnitType.FUMIGATOR, round) ? 0 : readHeader(FUMIGATOR_WEIGHT);
+
+        if (isBuilderWaiting(MARKET_BUILDER_SEEN, round)) {
+            setBuildDecision(UnitType.MARKET);
+            return;
         }
-        else if (type == UnitType.ESSENTIAL_WORKER) {
-            if (uc.read(WORKER_INDEX) < targetWorker)
-                return true;
-            else
-                return false;
+        if (readHeader(BARRACKS_INDEX) == 0) {
+            // Only once the build order has got to the barracks, so that the
+            // workers it starts with come first.
+            if (soldierWeight > 0 && shouldCreateUnit(BARRACKS_INDEX)) {
+                if (isBuilderWaiting(BARRACKS_BUILDER_SEEN, round)) {
+                    setBuildDecision(UnitType.BARRACKS);
+                    return;
+                }
+                // Nobody is about to build it, so get a worker who can.
+                if (workerWeight > 0) {
+                    setBuildDecision(UnitType.ESSENTIAL_WORKER);
+                    return;
+                }
+            }
+            soldierWeight = 0;
         }
-        else if (type == UnitType.FUMIGATOR) {
-            if (uc.read(FUMIGATOR_INDEX) < targetFumigator)
-                return true;
-            else
-                return false;
+
+        // Compare built / weight between types without dividing. A type
+        // with no weight is never chosen.
+        UnitType decision = null;
+        int built = 0;
+        int weight = 0;
+        if (workerWeight > 0) {
+            decision = UnitType.ESSENTIAL_WORKER;
+            built = workers;
+            weight = workerWeight;
         }
-        else if (type == UnitType.INFECTER) {
-            if (uc.read(INFECTER_INDEX) < targetInfecter)
-                return true;
-            else
-                return false;
+        if (soldierWeight > 0 && (decision == null || soldiers * weight < built * soldierWeight)) {
+            decision = UnitType.SOLDIER;
+            built = soldiers;
+            weight = soldierWeight;
         }
-        else if (type == UnitType.SOLDIER) {
-            if (uc.read(SOLDIER_INDEX) < targetSoldier)
-                return true;
-            else
-                return false;
+        if (fumigatorWeight > 0 && (decision == null || fumigators * weight < built * fumigatorWeight)) {
+            decision = UnitType.FUMIGATOR;
         }
-        return false;
+        setBuildDecision(decision);
     }
 
-    // Determine whether we should build the given UnitType, depending on whether
-    // we have exhausted the inital build order, or if we are now building
-    // according to the target number of each unit.
-    //
-    // Unfortunately, Farm is not a UnitType, because it does not have a
-    // team affiliation, so we need to special-case it here.
-    // TODO: Investigate a better way to handle this.
-    protected boolean shouldCreateUnit(UnitType type, boolean isFarm) {
-        int buildNum = uc.read(CURRENT_BUILD_INDEX);
-        if (buildNum < buildOrder.length) {
-            return shouldCreateUnitFromBuildOrder(type, isFarm);
+    // Return whether a worker has written to the given *_BUILDER_SEEN slot
+    // in the last PRODUCTION_RETRY rounds.
+    private boolean isBuilderWaiting(int slot, int round) {
+        int seen = readHeader(slot);
+        return seen != 0 && round - (seen - 1) < PRODUCTION_RETRY;
+    }
+
+    private void setBuildDecision(UnitType decision) {
+        int value = decision == null ? 0 : decision.ordinal() + 1;
+        if (value != readHeaderFresh(BUILD_DECISION)) {
+            writeHeader(BUILD_DECISION, value);
+            bumpProductionVersion();
         }
-        else {
-            return shouldCreateUnitFromTargetThresholds(type, isFarm);
+    }
+
+    private boolean isSpawnBlocked(UnitType type, int round) {
+        int blockedRound = readHeader(spawnBlockedSlot(type));
+        return blockedRound != 0 && round - (blockedRound - 1) < PRODUCTION_INTERVAL;
+    }
+
+    // Return the index in the shared array of the SPAWN_BLOCKED_* slot for
+    // the given worker, soldier or fumigator type.
+    protected int spawnBlockedSlot(UnitType type) {
+        if (type == UnitType.SOLDIER)
+            return SPAWN_BLOCKED_SOLDIER;
+        if (type == UnitType.FUMIGATOR)
+            return SPAWN_BLOCKED_FUMIGATOR;
+        return SPAWN_BLOCKED_WORKER;
+    }
+
+    // Called when we failed to spawn the given type. If that's because
+    // every square around us is taken, rather than because we're short of
+    // food, tell the production controller.
+    protected void reportIfBoxedIn(UnitType type) {
+        Location curLoc = uc.getLocation();
+        for (Direction dir : randomDirectionOrder()) {
+            Location loc = curLoc.add(dir);
+            if (uc.isOutOfMap(loc) || !uc.isAccessible(loc) || isPrimaryFarmLoc(loc))
+                continue;
+            if (uc.senseUnitAtLocation(loc) == null && uc.senseFarmAtLocation(loc) == null)
+                return;
         }
+        writeHeader(spawnBlockedSlot(type), uc.getRound() + 1);
     }
 
-    // We create Soldiers, Fumigators, and Essential Workers in a ratio
-    // specified by workerRatio, soldierRatio, and fumigatorRatio. This method
-    // returns whether the given UnitType should be built in order to move us
-    // closer to the ideal ratio.
-    protected boolean shouldCreateUnitRatio(UnitType type) {
-        // This method is only valid for the UnitType soldier, essential
-        // worker, or fumigator.
-        if (type != UnitType.SOLDIER && type != UnitType.ESSENTIAL_WORKER &&
-                type != UnitType.FUMIGATOR) {
+    // Report the zombies and enemy soldiers we can see this turn to the
+    // production controller.
+    protected void reportSightings() {
+        int zombies = threatMap.numZombies();
+        if (zombies > 0 && zombies > readHeaderFresh(ZOMBIES_SIGHTED))
+            writeHeader(ZOMBIES_SIGHTED, zombies);
+        int enemies = threatMap.numEnemySoldiers();
+        if (enemies > 0 && enemies > readHeaderFresh(ENEMIES_SIGHTED))
+            writeHeader(ENEMIES_SIGHTED, enemies);
+    }
+
+    // Return the *_INDEX counter of the given type, which is also the
+    // number of its build ticket.
+    protected int counterIndex(UnitType type) {
+        if (type == UnitType.LABORATORY)
+            return LABORATORY_INDEX;
+        if (type == UnitType.BARRACKS)
+            return BARRACKS_INDEX;
+        if (type == UnitType.HOSPITAL)
+            return HOSPITAL_INDEX;
+        if (type == UnitType.MARKET)
+            return MARKET_INDEX;
+        if (type == UnitType.ESSENTIAL_WORKER)
+            return WORKER_INDEX;
+        if (type == UnitType.FUMIGATOR)
+            return FUMIGATOR_INDEX;
+        if (type == UnitType.INFECTER)
+            return INFECTER_INDEX;
+        return SOLDIER_INDEX;
+    }
+
+    // Claim the build ticket for the given counter. Returns false if another
+    // builder holds it.
+    protected boolean claimBuildTicket(int index) {
+        int slot = BUILD_TICKETS_START + index;
+        int ticket = uc.read(slot);
+        int round = uc.getRound();
+        if (ticket != 0 && (ticket & TICKET_ID_MASK) != (myID & TICKET_ID_MASK) &&
+                (ticket >>> 16) - 1 >= round - 1)
             return false;
-        }
-        double curWorkerRatio = uc.read(WORKERS_BUILT) / workerRatio;
-        double curSoldierRatio = uc.read(SOLDIERS_BUILT) / soldierRatio;
-        double curFumigatorRatio = uc.read(FUMIGATORS_BUILT) / fumigatorRatio;
+        uc.write(slot, ((round + 1) << 16) | (myID & TICKET_ID_MASK));
+        return true;
+    }
 
-        if (type == UnitType.SOLDIER && curSoldierRatio <= curWorkerRatio &&
-            curSoldierRatio <= curFumigatorRatio) {
-            return true;
-        }
-        if (type == UnitType.ESSENTIAL_WORKER && curWorkerRatio <= curSoldierRatio &&
-                curWorkerRatio <= curFumigatorRatio) {
-            return true;
-        }
-        if (type == UnitType.FUMIGATOR && curFumigatorRatio <= curWorkerRatio &&
-                curFumigatorRatio <= curSoldierRatio) {
+    protected void releaseBuildTicket(int index) {
+        uc.write(BUILD_TICKETS_START + index, 0);
+    }
+
+    // Record that we built a unit of the given counter while holding its
+    // ticket, and release the ticket. If it was a worker, soldier or
+    // fumigator, we publish a new build decision straight away, so that the
+    // next builder this round doesn't build the same unit again.
+    protected void commitBuild(int index) {
+        incrementHeader(index);
+        // Only the kind the head step asks for moves the build order on.
+        // Workers and fumigators come from the ratios the whole time, and
+        // must not eat a step which is waiting for something else.
+        int buildNum = readHeaderFresh(CURRENT_BUILD_INDEX);
+        if (buildNum < buildOrder.length && BuildOrder.kind(buildOrder[buildNum]) == index)
+            writeHeader(CURRENT_BUILD_INDEX, buildNum + 1);
+        bumpProductionVersion();
+        if (index == WORKER_INDEX || index == SOLDIER_INDEX || index == FUMIGATOR_INDEX)
+            publishBuildDecision();
+        releaseBuildTicket(index);
+    }
+
+    protected void bumpProductionVersion() {
+        incrementHeader(PRODUCTION_VERSION);
+    }
+
+    // For a structure, return whether anything has changed since it last
+    // called waitForProduction() which could mean it now has something to
+    // build, or can now afford it.
+    protected boolean hasProductionChanged() {
+        return readHeader(PRODUCTION_VERSION) != productionVersionSeen ||
+                readHeader(FOOD_DEPOSITS) != depositsSeen || uc.getRound() >= productionRetryRound;
+    }
+
+    // For a structure which has nothing it can build right now, skip
+    // deciding again until hasProductionChanged().
+    protected void waitForProduction() {
+        productionVersionSeen = readHeader(PRODUCTION_VERSION);
+        depositsSeen = readHeader(FOOD_DEPOSITS);
+        productionRetryRound = uc.getRound() + PRODUCTION_RETRY;
+    }
+
+    // Spawn a unit of the given type under its build ticket. Returns whether
+    // we spawned one.
+    protected boolean spawnWithTicket(UnitType type) {
+        int index = counterIndex(type);
+        if (!claimBuildTicket(index))
+            return false;
+        if (spawn(type)) {
+            commitBuild(index);
             return true;
         }
+        releaseBuildTicket(index);
         return false;
     }
 
-    // Increment the number of units we have constructed from the hardcoded
-    // build order.
-    protected void incrementBuildNum() {
-        uc.write(CURRENT_BUILD_INDEX, uc.read(CURRENT_BUILD_INDEX) + 1);
-    }
-
     /**
      * Generic attack method.
      */
@@ -483,7 +951,6 @@ public abstract class Unit {
      * Checks if a given location is adjacent to a non-structure unit.
      */
     boolean isAdjacentToAnotherUnit(Location loc){
-        shuffleDirections();
         for (Direction dir : directions) {
 
             /*Location adjacent to loc following the given direction*/
@@ -529,13 +996,13 @@ public abstract class Unit {
     // array. Return whether the given Location is within radius 1 of that
     // initial farm.
     protected boolean isPrimaryFarmLoc(Location loc) {
-        if (uc.read(PRIMARY_FARM_INIT) == 0)
+        if (readHeader(PRIMARY_FARM_INIT) == 0)
             return false;
 
-        int farmXMin = uc.read(PRIMARY_FARM_MIN_X);
-        int farmXMax = uc.read(PRIMARY_FARM_MAX_X);
-        int farmYMin = uc.read(PRIMARY_FARM_MIN_Y);
-        int farmYMax = uc.read(PRIMARY_FARM_MAX_Y);
+        int farmXMin = readHeader(PRIMARY_FARM_MIN_X);
+        int farmXMax = readHeader(PRIMARY_FARM_MAX_X);
+        int farmYMin = readHeader(PRIMARY_FARM_MIN_Y);
+        int farmYMax = readHeader(PRIMARY_FARM_MAX_Y);
 
         if (farmXMin <= loc.x && farmXMax >= loc.x &&
             farmYMin <= loc.y && farmYMax >= loc.y) {
@@ -550,13 +1017,14 @@ public abstract class Unit {
      */
     boolean spawn(UnitType type) { return spawn(type, false); }
     boolean spawn(UnitType type, boolean canBuildAdj){
-        try {
-            shuffleDirections();
-        }
-        catch (Exception e) {
-            int foo = 4;
-        }
-        for (Direction dir : directions) {
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        boolean spawned = trySpawn(type, canBuildAdj);
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.SPAWN, profile);
+        return spawned;
+    }
+
+    private boolean trySpawn(UnitType type, boolean canBuildAdj){
+        for (Direction dir : randomDirectionOrder()) {
 
             /*Check for adjacency with a unit*/
             if (!canBuildAdj) {
@@ -580,8 +1048,7 @@ public abstract class Unit {
     }
 
     boolean buildFarm() {
-        shuffleDirections();
-        for (Direction dir : directions){
+        for (Direction dir : randomDirectionOrder()){
 
             /*Check for adjacency with a unit*/
             if (isAdjacentToAnotherUnit(uc.getLocation().add(dir))) continue;
@@ -599,31 +1066,129 @@ public abstract class Unit {
     // returns the Location of the zombie/enemy that is threatening,
     // or null if nothing.
     protected Location isNearZombie(Location loc) {
-        UnitInfo[] units = uc.senseUnits(uc.getTeam(), true, true);
-        for (int i = 0; i < units.length; i++) {
-            // if the unit is a zombie or enemy fumigator
-            if (units[i].getTeam() == Team.ZOMBIE ||
-                    (units[i].getTeam() == uc.getTeam().getOpponent() &&
-                            units[i].getType() == UnitType.FUMIGATOR)) {
-                if (loc.distanceSquared(units[i].getLocation()) <= zombieDangerRadius)
-                    return units[i].getLocation();
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        Location zombieLoc = threatMap.threatNear(loc);
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.IS_NEAR_ZOMBIE, profile);
+        return zombieLoc;
+    }
+
+    // The squares around us, indexed by Direction ordinal, that we may not
+    // move to because they're outside the radius we must stay within.
+    private int outsideMask;
+
+    // Which squares we have asked the engine whether we can move to, and
+    // which of those we can.
+    private int canMoveKnown;
+    private int canMoveMask;
+
+    // Which squares we have checked for hazards, and which of those are
+    // near a zombie, or infected (strongly, or known to be).
+    private int hazardKnown;
+    private int zombieMask;
+    private int infectedMask;
+
+    // The round and location the masks above are for.
+    private int movesRound = -1;
+    private int movesX;
+    private int movesY;
+
+    static final int HAZARD_NONE = 0;
+    static final int HAZARD_ZOMBIE = 1;
+    static final int HAZARD_INFECTED = 2;
+
+    // Every movement strategy asks the same questions about the squares
+    // around us, so we keep the answers as bitmasks for the rest of the turn.
+    // A unit which tries several strategies in a turn then only checks each
+    // square once. The radius check is cheap and done for every square up
+    // front; the rest are done a square at a time, cheapest first, when a
+    // strategy asks, so a strategy which takes the first square it likes
+    // pays only for the squares it looks at. Call this at the start of each
+    // strategy, to start over if we have moved or a new round has begun.
+    protected void prepareMoves() {
+        int round = uc.getRound();
+        Location curLoc = uc.getLocation();
+        if (round == movesRound && curLoc.x == movesX && curLoc.y == movesY)
+            return;
+        movesRound = round;
+        movesX = curLoc.x;
+        movesY = curLoc.y;
+        canMoveKnown = 0;
+        canMoveMask = 0;
+        hazardKnown = 0;
+        zombieMask = 0;
+        infectedMask = 0;
+
+        outsideMask = 0;
+        if (stayInSafeRadius || workerStayInSafeRadius) {
+            int radius = Integer.MAX_VALUE;
+            if (stayInSafeRadius)
+                radius = readHeader(SAFE_RADIUS);
+            if (workerStayInSafeRadius)
+                radius = Math.min(radius, workerSafeRadius);
+            Location baseLoc = baseLocation();
+            for (int d = 0; d < DirectionOrders.ALL_DIRECTIONS.length; d++) {
+                int dx = movesX + DirectionOrders.DX[d] - baseLoc.x;
+                int dy = movesY + DirectionOrders.DY[d] - baseLoc.y;
+                if (dx * dx + dy * dy > radius)
+                    outsideMask |= 1 << d;
             }
         }
-        return null;
+    }
+
+    // Return whether the square in the given direction is outside the radius
+    // we must stay within.
+    protected boolean isOutsideRadius(Direction dir) {
+        return (outsideMask & (1 << dir.ordinal())) != 0;
+    }
+
+    // Return whether the engine lets us move in the given direction.
+    protected boolean canMoveDir(Direction dir) {
+        int bit = 1 << dir.ordinal();
+        if ((canMoveKnown & bit) == 0) {
+            canMoveKnown |= bit;
+            if (uc.canMove(dir))
+                canMoveMask |= bit;
+        }
+        return (canMoveMask & bit) != 0;
+    }
+
+    // Return the worst reason we wouldn't want to move to the square in the
+    // given direction, one of the HAZARD_* constants.
+    protected int moveHazard(Direction dir) {
+        int bit = 1 << dir.ordinal();
+        if ((hazardKnown & bit) == 0) {
+            int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+            hazardKnown |= bit;
+            Location loc = uc.getLocation().add(dir);
+            // Don't move too close to a zombie, to a known infected square,
+            // or into a strongly infected one.
+            if (isNearZombie(loc) != null)
+                zombieMask |= bit;
+            else if (isKnownInfected(loc) || uc.isStronglyInfected(loc))
+                infectedMask |= bit;
+            if (Profiler.ENABLED) Profiler.stop(uc, Profiler.MOVE_HAZARD, profile);
+        }
+        if ((zombieMask & bit) != 0)
+            return HAZARD_ZOMBIE;
+        if ((infectedMask & bit) != 0)
+            return HAZARD_INFECTED;
+        return HAZARD_NONE;
+    }
+
+    // Return whether we can move in the given direction, and the square
+    // there is safe.
+    protected boolean isGoodMove(Direction dir) {
+        return canMoveDir(dir) && moveHazard(dir) == HAZARD_NONE;
     }
 
     // Move method which attempts to move the unit directly away from the base.
     protected void moveAwayFromBase() {
-        Direction towards = getDirectionTowardsBase();
-        Direction away = towards.opposite();
-        if (uc.canMove(away)) {
-            Location newLoc = uc.getLocation().add(away);
-            if (!couldMoveTo(newLoc))
-                return;
-
-            uc.move(away);
+        if (!uc.canMove())
             return;
-        }
+        prepareMoves();
+        Direction away = getDirectionTowardsBase().opposite();
+        if (isGoodMove(away))
+            uc.move(away);
     }
 
     // Randomly choose a direction for this unit to move, biased towards
@@ -639,41 +1204,21 @@ public abstract class Unit {
     //   2        3       4
     protected void moveBiasTowardsBase() {
         if (!uc.canMove()) return;
+        prepareMoves();
 
-        ArrayList<Direction> arr = new ArrayList<Direction>();
         Direction towards = getDirectionTowardsBase();
 
-        // TODO: Create global constants for these weights
-        for (int i = 0; i < 10; i++) {
-            arr.add(towards);
-        }
-        for (int i = 0; i < 6; i++) {
-            arr.add(towards.rotateLeft());
-            arr.add(towards.rotateRight());
-        }
-        for (int i = 0; i < 3; i++) {
-            arr.add(towards.rotateLeft().rotateLeft());
-            arr.add(towards.rotateRight().rotateRight());
-        }
-        for (int i = 0; i < 2; i++) {
-            arr.add(towards.rotateLeft().rotateLeft().rotateLeft());
-            arr.add(towards.rotateRight().rotateRight().rotateRight());
-        }
-        for (int i = 0; i < 1; i++) {
-            arr.add(towards.opposite());
-        }
-
-        // TODO: refactor this so that if a randomly chosen direction is invalid,
-        // we don't attempt to move there again.
-        for (int i = 0; i < 10; i++) {
-            int r = (int) (Math.random() * arr.size());
-            Direction dir = Direction.values()[r];
-
-            if (uc.canMove(dir)) {
-                Location newLoc = uc.getLocation().add(dir);
-                if (!couldMoveTo(newLoc))
-                    continue;
+        // Each direction we try and can't move in is excluded from the next
+        // pick, so we never try the same one twice.
+        int tried = 0;
+        for (int i = 0; i < DirectionSampler.NUM_TURNS; i++) {
+            int rotation = DirectionSampler.TOWARDS.sampleTurn(tried, rng);
+            if (rotation == -1)
+                return;
+            tried |= 1 << rotation;
+            Direction dir = DirectionSampler.turn(towards, rotation);
 
+            if (isGoodMove(dir)) {
                 uc.move(dir);
                 return;
             }
@@ -686,40 +1231,33 @@ public abstract class Unit {
     // if units don't have a directive yet or can't fulfill that directive,
     // they may default to moving randomly.
     void moveRandomly(){ moveRandomly(null); }
-    void moveRandomly(HashSet<MyLocation> alreadyCheckedLocations){
+    void moveRandomly(LocationSet alreadyCheckedLocations){
+        int profile = Profiler.ENABLED ? Profiler.start(uc) : 0;
+        tryMoveRandomly(alreadyCheckedLocations);
+        if (Profiler.ENABLED) Profiler.stop(uc, Profiler.MOVE_RANDOMLY, profile);
+    }
+
+    private void tryMoveRandomly(LocationSet alreadyCheckedLocations){
 
         /*Nothing to do if the unit can't move this turn*/
         if (!uc.canMove()) {
             return;
         }
+        prepareMoves();
 
-        shuffleDirections();
-        for (Direction dir : directions) {
-            if (!uc.canMove(dir))
+        for (Direction dir : randomDirectionOrder()) {
+            // if stayInRadius and location is outside radius, don't move there
+            if (isOutsideRadius(dir))
                 continue;
 
             // If we've already checked this location, don't move there.
             if (alreadyCheckedLocations != null) {
-                if (alreadyCheckedLocations.contains(new MyLocation(uc.getLocation().add(dir).x, uc.getLocation().add(dir).y)))
-                    continue;
-            }
-
-            // if stayInRadius and location is outside radius, don't move there
-            if (stayInSafeRadius) {
-                Location newLoc = uc.getLocation().add(dir);
-                Location baseLoc = new Location(uc.read(BASE_LOC_X), uc.read(BASE_LOC_Y));
-                if (newLoc.distanceSquared(baseLoc) > uc.read(SAFE_RADIUS))
+                if (alreadyCheckedLocations.contains(movesX + DirectionOrders.DX[dir.ordinal()],
+                        movesY + DirectionOrders.DY[dir.ordinal()]))
                     continue;
             }
 
-            Location newLoc = uc.getLocation().add(dir);
-            if (workerStayInSafeRadius) {
-                Location baseLoc = new Location(uc.read(BASE_LOC_X), uc.read(BASE_LOC_Y));
-                if (newLoc.distanceSquared(baseLoc) > workerSafeRadius)
-                    continue;
-            }
-
-            if (!couldMoveTo(newLoc))
+            if (!isGoodMove(dir))
                 continue;
 
             uc.move(dir);
@@ -743,38 +1281,35 @@ public abstract class Unit {
             failedMoveTowards = 0;
             return false;
         }
+        prepareMoves();
 
-        Direction dirTo = uc.getLocation().directionTo(loc);
-        Location newLoc = uc.getLocation().add(dirTo);
+        // Follow the distance field around any obstacles if it has reached
+        // us; otherwise head straight for the location.
+        Direction dirTo = null;
+        if (pathFinder != null)
+            dirTo = pathFinder.nextStep(loc.x, loc.y);
+        if (dirTo == null)
+            dirTo = uc.getLocation().directionTo(loc);
 
         // if stayInRadius and location is outside radius, we can't go there,
         // so move randomly instead and return false.
-        if (stayInSafeRadius) {
-            Location baseLoc = new Location(uc.read(BASE_LOC_X), uc.read(BASE_LOC_Y));
-            if (newLoc.distanceSquared(baseLoc) > uc.read(SAFE_RADIUS)) {
-                moveRandomly();
-                failedMoveTowards = 0;
-                return false;
-            }
+        if (isOutsideRadius(dirTo)) {
+            moveRandomly();
+            failedMoveTowards = 0;
+            return false;
         }
 
         // If we would need to get close to a zombie to get there,
         // don't go there, move randomly instead, but don't delete
-        // our target.
-        if (isNearZombie(newLoc) != null) {
+        // our target. Don't move to an infected square either.
+        int hazard = moveHazard(dirTo);
+        if (hazard != HAZARD_NONE) {
             moveRandomly();
             failedMoveTowards++;
-            return true;
+            return hazard == HAZARD_ZOMBIE;
         }
 
-        // Don't move to a known infected square
-        if (isKnownInfected(newLoc)) {
-            moveRandomly();
-            failedMoveTowards++;
-            return false;
-        }
-
-        if (!uc.canMove(dirTo)) {
+        if (!canMoveDir(dirTo)) {
             moveRandomly();
             failedMoveTowards = 0;
             return false;
@@ -783,23 +1318,4 @@ public abstract class Unit {
         uc.move(dirTo);
         return true;
     }
-
-    // Check for a variety of common reasons we wouldn't want to move
-    // to a location.
-    protected boolean couldMoveTo(Location loc) {
-        // Don't move into a strongly infected spot.
-        if (uc.isStronglyInfected(loc))
-            return false;
-
-        // Don't move too close to a zombie.
-        if (isNearZombie(loc) != null)
-            return false;
-
-        // Don't move to a known infected square.
-        if (isKnownInfected(loc))
-            return false;
-
-        // Otherwise, this location is valid.
-        return true;
-    }
 }
@@ -30,7 +30,9 @@ public class UnitPlayer {
         }
 
         while (true) {
+            myUnit.startTurn();
             myUnit.play();
+            if (Profiler.ENABLED) Profiler.maybeReport(uc);
             uc.yield(); // End of turn
         }
 
@@ -18,14 +18,17 @@ public class Worker extends Unit {
 
         // Whether this worker should stay within the safe radius around the base.
         workerStayInSafeRadius = true;
+
+        // Workers find their way around obstacles using a distance field.
+        initPathFinder();
     }
 
     // Set this worker as the primary worker, and write this into the shared
     // array so that no other worker becomes the primary worker.
     public void setIsPrimaryWorker() {
-        if (uc.read(PRIMARY_FARMER_BOOL) == 0) {
+        if (readHeaderFresh(PRIMARY_FARMER_BOOL) == 0) {
             isPrimaryWorker = true;
-            uc.write(PRIMARY_FARMER_BOOL, 1);
+            writeHeader(PRIMARY_FARMER_BOOL, 1);
         }
     }
 
@@ -55,10 +58,10 @@ public class Worker extends Unit {
         }
 
         isStopped = true;
-        uc.write(PRIMARY_FARM_MIN_X, loc.x - 1);
-        uc.write(PRIMARY_FARM_MAX_X, loc.x + 1);
-        uc.write(PRIMARY_FARM_MIN_Y, loc.y - 1);
-        uc.write(PRIMARY_FARM_MAX_Y, loc.y + 1);
+        writeHeader(PRIMARY_FARM_MIN_X, loc.x - 1);
+        writeHeader(PRIMARY_FARM_MAX_X, loc.x + 1);
+        writeHeader(PRIMARY_FARM_MIN_Y, loc.y - 1);
+        writeHeader(PRIMARY_FARM_MAX_Y, loc.y + 1);
 
         return true;
     }
@@ -72,6 +75,8 @@ public class Worker extends Unit {
         }
         if (uc.canDeposit()) {
             uc.deposit();
+            // Let the production controller know how much food is coming in.
+            incrementHeader(FOOD_DEPOSITS);
         }
         // If we have found an appropriate location for the first farm,
         // attempt to build a marker or farm.
@@ -80,6 +85,11 @@ public class Worker extends Unit {
 
                 uc.spawn(UnitType.MARKET, Direction.SOUTH);
             }
+            else if (uc.senseUnitAtLocation(uc.getLocation().add(Direction.SOUTH)) == null) {
+                // Nothing is in the way, so we must be short of food. Ask
+                // the base to save it for the market.
+                writeHeader(MARKET_BUILDER_SEEN, uc.getRound() + 1);
+            }
             for (Direction dir : directions) {
                 if (dir == Direction.SOUTH)
                     continue;
@@ -95,61 +105,69 @@ public class Worker extends Unit {
         }
     }
 
-    void play() {
+    void runTask(int task) {
         // The primary worker has a different set of logic it follows.
         if (isPrimaryWorker) {
-            playPrimaryWorker();
+            if (task == TASK_MOVE)
+                playPrimaryWorker();
             return;
         }
 
-        // Workers should move randomly, unless they are stopped (ie, they are
-        // the primary worker and have found a farm).
-        moveRandomly();
+        if (task == TASK_MOVE) {
+            // Workers should move randomly, unless they are stopped (ie, they
+            // are the primary worker and have found a farm).
+            moveRandomly();
+        }
+        else if (task == TASK_BUILD) {
+            playBuild();
+        }
+        else if (task == TASK_WRITE_INTEL) {
+            // Update the shared array with squares that this unit knows to
+            // be infected.
+            writeInfected();
+            reportSightings();
+        }
+        else if (task == TASK_READ_INTEL) {
+            // Update this unit with information from the shared array about
+            // squares which are known to be infected or fumigated.
+            updateInfected();
+            updateFumigated();
+        }
+        else if (task == TASK_HOUSEKEEPING) {
+            expandPathFinder();
+        }
+    }
 
+    // Gather and deposit food, and build a building if appropriate.
+    private void playBuild() {
         // Always gather and deposit food, if able.
         if (uc.canGatherFood()) {
             uc.gatherFood();
         }
         if (uc.canDeposit()) {
             uc.deposit();
+            // Let the production controller know how much food is coming in.
+            incrementHeader(FOOD_DEPOSITS);
         }
         // Build a building, if appropriate.
-        if (shouldCreateUnit(null, true)) {
-            if (buildFarm()) {
-                uc.write(FARM_INDEX, uc.read(FARM_INDEX) + 1);
-                incrementBuildNum();
-            }
-        }
-        if (shouldCreateUnit(UnitType.MARKET, false)) {
-            if (spawn(UnitType.MARKET)) {
-                uc.write(MARKET_INDEX, uc.read(MARKET_INDEX) + 1);
-                incrementBuildNum();
-            }
-        }
-        if (shouldCreateUnit(UnitType.BARRACKS, false)) {
-            if (spawn(UnitType.BARRACKS)) {
-                uc.write(BARRACKS_INDEX, uc.read(BARRACKS_INDEX) + 1);
-                incrementBuildNum();
-            }
-        }
-        if (shouldCreateUnit(UnitType.LABORATORY, false)) {
-            if (spawn(UnitType.LABORATORY)) {
-                uc.write(LABORATORY_INDEX, uc.read(LABORATORY_INDEX) + 1);
-                incrementBuildNum();
-            }
+        if (shouldCreateUnit(FARM_INDEX) && claimBuildTicket(FARM_INDEX)) {
+            if (buildFarm())
+                commitBuild(FARM_INDEX);
+            else
+                releaseBuildTicket(FARM_INDEX);
         }
-        if (shouldCreateUnit(UnitType.HOSPITAL, false)) {
-            if (spawn(UnitType.HOSPITAL)) {
-                uc.write(HOSPITAL_INDEX, uc.read(HOSPITAL_INDEX) + 1);
-                incrementBuildNum();
-            }
+        if (shouldCreateUnit(MARKET_INDEX))
+            spawnWithTicket(UnitType.MARKET);
+        if (shouldCreateUnit(BARRACKS_INDEX)) {
+            // Let the base know there's a worker to build it, so that it
+            // saves the food for it.
+            writeHeader(BARRACKS_BUILDER_SEEN, uc.getRound() + 1);
+            spawnWithTicket(UnitType.BARRACKS);
         }
-        // Update this unit with information from the shared array about squares
-        // which are known to be infected or fumigated. Also update the shared
-        // array with squares that this unit knows to be infected.
-        updateInfected();
-        updateFumigated();
-        writeInfected();
+        if (shouldCreateUnit(LABORATORY_INDEX))
+            spawnWithTicket(UnitType.LABORATORY);
+        if (shouldCreateUnit(HOSPITAL_INDEX))
+            spawnWithTicket(UnitType.HOSPITAL);
     }
 
 
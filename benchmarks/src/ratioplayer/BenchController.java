@@ -0,0 +1,145 @@
+package ratioplayer;
+
+import aic2020.user.*;
+
+/**
+ * A UnitController for benchmarks. It holds a shared array and the state of
+ * a single unit standing on an open map: every square is accessible and
+ * unoccupied, nothing is infected, and the unit never runs out of energy.
+ * Moves and spawns succeed but don't change anything, so a benchmark can call
+ * the same method over and over and see the same world each time. The units
+ * it senses are whatever the benchmark puts in sensedUnits.
+ */
+public class BenchController implements UnitController {
+
+    static final int SHARED_ARRAY_SIZE = 1000000;
+
+    final int[] sharedArray = new int[SHARED_ARRAY_SIZE];
+    final UnitType type;
+    final Team team;
+    Location location;
+    int round = 0;
+    UnitInfo[] sensedUnits = new UnitInfo[0];
+
+    BenchController(UnitType type, Location location) {
+        this.type = type;
+        this.team = Team.A;
+        this.location = location;
+    }
+
+    public UnitInfo getInfo() {
+        return new UnitInfo(1, team, type, location);
+    }
+
+    public UnitType getType() {
+        return type;
+    }
+
+    public Team getTeam() {
+        return team;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int read(int index) {
+        return sharedArray[index];
+    }
+
+    public void write(int index, int value) {
+        sharedArray[index] = value;
+    }
+
+    public void yield() {
+        round++;
+    }
+
+    public int getEnergyLeft() {
+        return Integer.MAX_VALUE;
+    }
+
+    public int getEnergyUsed() {
+        return 0;
+    }
+
+    public UnitInfo[] senseUnits(Team team, boolean enemies, boolean zombies) {
+        return sensedUnits;
+    }
+
+    public UnitInfo[] senseUnits(int radiusSquared, Team team) {
+        return sensedUnits;
+    }
+
+    public UnitInfo[] senseUnits(Team team) {
+        return sensedUnits;
+    }
+
+    public boolean canSenseLocation(Location loc) {
+        return true;
+    }
+
+    public boolean isOutOfMap(Location loc) {
+        return false;
+    }
+
+    public boolean isAccessible(Location loc) {
+        return true;
+    }
+
+    public boolean isStronglyInfected(Location loc) {
+        return false;
+    }
+
+    public UnitInfo senseUnitAtLocation(Location loc) {
+        return null;
+    }
+
+    public FarmInfo senseFarmAtLocation(Location loc) {
+        return null;
+    }
+
+    public boolean canSpawn(UnitType type, Direction dir) {
+        return dir != Direction.ZERO;
+    }
+
+    public void spawn(UnitType type, Direction dir) {}
+
+    public boolean canBuildFarm(Direction dir) {
+        return dir != Direction.ZERO;
+    }
+
+    public void buildFarm(Direction dir) {}
+
+    public boolean canGatherFood() {
+        return false;
+    }
+
+    public void gatherFood() {}
+
+    public boolean canDeposit() {
+        return false;
+    }
+
+    public void deposit() {}
+
+    public boolean canMove() {
+        return !type.isStructure();
+    }
+
+    public boolean canMove(Direction dir) {
+        return canMove() && dir != Direction.ZERO;
+    }
+
+    public void move(Direction dir) {}
+
+    public boolean canAttack(Location loc) {
+        return false;
+    }
+
+    public void attack(Location loc) {}
+}
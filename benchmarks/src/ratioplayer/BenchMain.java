@@ -0,0 +1,37 @@
+package ratioplayer;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so the allocation rate of each
+ * benchmark is reported next to its time.
+ *
+ * The benchmarks are in package ratioplayer so that they can call the
+ * player's package-private methods directly, but they live in their own
+ * source root, benchmarks/src, so that the player's directory can be copied
+ * into the competition's src/ without dragging JMH along. To build and run
+ * them, compile the player's sources and this source root together against
+ * the aic2020.user classes from the competition's support code, with
+ * jmh-core and jmh-generator-annprocess (and their dependencies) on the
+ * classpath:
+ *
+ *   javac -cp aic2020.jar:jmh/* -d out *.java benchmarks/src/ratioplayer/*.java
+ *   java -cp aic2020.jar:jmh/*:out ratioplayer.BenchMain [regexp]
+ *
+ * An optional regular expression picks which benchmarks to run, eg
+ * "JournalBenchmark.updateInfected".
+ */
+public class BenchMain {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "ratioplayer\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,51 @@
+package ratioplayer;
+
+import aic2020.user.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a fumigator choosing the next square to fumigate, when it
+ * knows of infectedSize infected squares and has to claim a new cell.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FumigatorBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    int infectedSize;
+
+    BenchController uc;
+    Fumigator fumigator;
+
+    @Setup
+    public void setUp() {
+        uc = new BenchController(UnitType.FUMIGATOR, new Location(100, 100));
+        Base base = new Base(uc);
+        base.setBaseLocation();
+        fumigator = new Fumigator(uc);
+        for (int i = 0; i < infectedSize; i++)
+            fumigator.infectedLocations.add(i % 256, i / 256);
+    }
+
+    @Benchmark
+    public Location selectNewCell() {
+        fumigator.toFumigate = null;
+        fumigator.claimedCell = -1;
+        fumigator.maybeSelectToFumigate();
+        return fumigator.toFumigate;
+    }
+
+    // Carrying on within the cell we already hold.
+    @Benchmark
+    public Location selectInClaimedCell() {
+        fumigator.toFumigate = null;
+        fumigator.maybeSelectToFumigate();
+        return fumigator.toFumigate;
+    }
+}
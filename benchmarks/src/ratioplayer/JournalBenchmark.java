@@ -0,0 +1,82 @@
+package ratioplayer;
+
+import aic2020.user.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the infected and fumigated journals in the shared array:
+ * reading a journal of journalSize entries into a unit's infectedLocations,
+ * reading it on a quiet turn when nothing is new, and the Base expiring every
+ * entry of each journal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int journalSize;
+
+    BenchController uc;
+    Base base;
+    Soldier soldier;
+
+    @Setup
+    public void setUp() {
+        uc = new BenchController(UnitType.SOLDIER, new Location(100, 100));
+        base = new Base(uc);
+        base.setBaseLocation();
+        base.initializeInfectedSquares();
+        soldier = new Soldier(uc);
+        // Entries only hold squares within 127 of the base in each direction
+        // (see encodeJournalEntry()), so we fill the 255 x 255 square around
+        // it row by row, wrapping round once it is full.
+        for (int i = 0; i < journalSize; i++) {
+            int x = 100 - 127 + i % 255;
+            int y = 100 - 127 + (i / 255) % 255;
+            base.appendJournal(base.INFECTED_SQUARES_START, base.INFECTED_SQUARES_HEAD,
+                    base.INFECTED_SQUARES_TAIL, base.INFECTED_SQUARES_GENERATION, x, y);
+            base.appendJournal(base.FUMIGATED_SQUARES_START, base.FUMIGATED_SQUARES_HEAD,
+                    base.FUMIGATED_SQUARES_TAIL, base.FUMIGATED_SQUARES_GENERATION, x, y);
+        }
+        // Every entry was written in round 0, so all of them have expired.
+        uc.round = 10;
+    }
+
+    // A unit which has never read the journal catches up on all of it. This
+    // includes clearing the unit's set, so each run starts from scratch.
+    @Benchmark
+    public LocationSet updateInfectedFromStart() {
+        soldier.infectedCursor = 0;
+        soldier.infectedLocations.clear();
+        soldier.updateInfected();
+        return soldier.infectedLocations;
+    }
+
+    // A unit which is already up to date, as on most turns.
+    @Benchmark
+    public LocationSet updateInfectedQuiet() {
+        soldier.infectedCursor = uc.read(soldier.INFECTED_SQUARES_TAIL);
+        soldier.updateInfected();
+        return soldier.infectedLocations;
+    }
+
+    @Benchmark
+    public int expireInfected() {
+        uc.write(base.INFECTED_SQUARES_HEAD, 0);
+        base.expireInfected();
+        return uc.read(base.INFECTED_SQUARES_HEAD);
+    }
+
+    @Benchmark
+    public int expireFumigated() {
+        uc.write(base.FUMIGATED_SQUARES_HEAD, 0);
+        base.expireFumigated();
+        return uc.read(base.FUMIGATED_SQUARES_HEAD);
+    }
+}
@@ -0,0 +1,57 @@
+package ratioplayer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the two ways we have of keeping sets of squares: MyLocation,
+ * whose hashCode() and equals() let it be kept in a java.util collection, and
+ * LocationSet, which packs each square into an int.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationBenchmark {
+
+    static final int NUM_SQUARES = 1024;
+
+    MyLocation[] locations = new MyLocation[NUM_SQUARES];
+    MyLocation[] copies = new MyLocation[NUM_SQUARES];
+    LocationSet set = new LocationSet();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < NUM_SQUARES; i++) {
+            locations[i] = new MyLocation(100 + i % 32, 100 + i / 32);
+            copies[i] = new MyLocation(100 + i % 32, 100 + i / 32);
+            set.add(locations[i].x, locations[i].y);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_SQUARES)
+    public void myLocationHashCode(Blackhole bh) {
+        for (int i = 0; i < NUM_SQUARES; i++)
+            bh.consume(locations[i].hashCode());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_SQUARES)
+    public void myLocationEquals(Blackhole bh) {
+        for (int i = 0; i < NUM_SQUARES; i++)
+            bh.consume(locations[i].equals(copies[i]));
+    }
+
+    // The LocationSet lookup which replaces hashing a MyLocation.
+    @Benchmark
+    @OperationsPerInvocation(NUM_SQUARES)
+    public void locationSetContains(Blackhole bh) {
+        for (int i = 0; i < NUM_SQUARES; i++)
+            bh.consume(set.contains(copies[i].x, copies[i].y));
+    }
+}
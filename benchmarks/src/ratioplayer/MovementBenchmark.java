@@ -0,0 +1,50 @@
+package ratioplayer;
+
+import aic2020.user.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the random movement helpers, on an open map with no zombies
+ * in sight.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovementBenchmark {
+
+    BenchController uc;
+    Soldier soldier;
+
+    @Setup
+    public void setUp() {
+        // The base is a few squares to the south west.
+        uc = new BenchController(UnitType.SOLDIER, new Location(90, 90));
+        new Base(uc).setBaseLocation();
+        uc.location = new Location(100, 100);
+        soldier = new Soldier(uc);
+    }
+
+    // Each invocation is a new turn, as it would be in a game, so that the
+    // moves prepareMoves() caches for a round and location are worked out
+    // afresh every time rather than looked up.
+    private void nextTurn() {
+        uc.yield();
+        soldier.startTurn();
+    }
+
+    @Benchmark
+    public void moveBiasTowardsBase() {
+        nextTurn();
+        soldier.moveBiasTowardsBase();
+    }
+
+    @Benchmark
+    public Object randomDirectionOrder() {
+        return soldier.randomDirectionOrder();
+    }
+}
@@ -0,0 +1,59 @@
+package ratioplayer.sim;
+
+import ratioplayer.Profiler;
+
+/**
+ * Command line entry point for the simulator. Plays a number of matches of
+ * our player against itself, one seed after another, and prints a summary of
+ * each along with overall results and throughput. If Profiler.ENABLED is
+ * set, the profile of each match is printed after its summary.
+ *
+ * Compile this package together with the player's sources against the
+ * aic2020.user classes from the competition's support code, then run:
+ *
+ *   java ratioplayer.sim.LocalMatch [games] [firstSeed] [mapSize] [maxRounds]
+ */
+public class LocalMatch {
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        long firstSeed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int mapSize = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        int maxRounds = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+        int winsA = 0;
+        int crashes = 0;
+        int timeouts = 0;
+        // Teams which never built a barracks. Every build order has one
+        // early on, so this catches the order stalling or losing the step.
+        int noBarracks = 0;
+        // Every unit shares the profiler here, so we print its report once
+        // per match rather than letting each unit print its own.
+        Profiler.autoReport = false;
+        long startTime = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            Profiler.reset();
+            Match match = new Match(firstSeed + g, mapSize, mapSize, maxRounds);
+            match.run();
+            System.out.println(match.summary());
+            if (match.firstCrash != null)
+                match.firstCrash.printStackTrace(System.out);
+            if (Profiler.ENABLED)
+                System.out.print(Profiler.report());
+
+            if (match.winner == aic2020.user.Team.A)
+                winsA++;
+            crashes += match.crashes[0] + match.crashes[1];
+            timeouts += match.timeouts[0] + match.timeouts[1];
+            for (int t = 0; t < 2; t++) {
+                if (match.built[t][aic2020.user.UnitType.BARRACKS.ordinal()] == 0)
+                    noBarracks++;
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println("games=" + games + " winsA=" + winsA + " crashes=" + crashes +
+                " timeouts=" + timeouts + " noBarracks=" + noBarracks);
+        System.out.printf("%.2f s total, %.0f games/hour%n", seconds, games * 3600 / seconds);
+    }
+}
@@ -0,0 +1,530 @@
+package ratioplayer.sim;
+
+import aic2020.user.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A simplified, deterministic AIC2020 match between two copies of our player,
+ * for profiling and tuning without the real engine. Everything random (the
+ * terrain, where zombies appear, where the map sits) comes from the seed, and
+ * units take their turns strictly one after another, so the same seed always
+ * plays out the same way as long as the player itself is deterministic.
+ *
+ * The rules are a rough approximation of the real game:
+ *  - Each team starts with a base in opposite corners of the map and some
+ *    food, which it spends on spawning units and building farms. The base
+ *    also brings in a little food every round.
+ *  - Farms grow food each round. Workers gather it from adjacent farms and
+ *    deposit it next to their base or a market.
+ *  - Every ZOMBIE_INTERVAL rounds, zombies appear on the edge of the map.
+ *    Zombies chase the nearest unit, hurt any unit (but not structures) next
+ *    to them, and infect the squares around them. Infected squares hurt units standing on them,
+ *    until the infection wears off or a fumigator walks by.
+ *  - Soldiers and infecters attack. A team loses when its base is destroyed;
+ *    after maxRounds, the team with more units left wins.
+ */
+public class Match {
+
+    static final int VISION_RADIUS = 32;
+    static final int STRONG_INFECTION = 3;
+    static final int ZOMBIE_INFECTION = 5;
+    static final int NEARBY_INFECTION = 2;
+    static final int ZOMBIE_INTERVAL = 20;
+    static final int ZOMBIE_DAMAGE = 4;
+    static final int INFECTION_DAMAGE = 1;
+    static final int STARTING_FOOD = 120;
+    static final int BASE_INCOME = 1;
+    static final int FARM_COST = 10;
+    static final int FARM_CAPACITY = 20;
+    static final int CARRY_CAPACITY = 20;
+    static final int SHARED_ARRAY_SIZE = 1000000;
+
+    final long seed;
+    final int width;
+    final int height;
+    final int maxRounds;
+    // The map sits at an offset from the origin, as it does in the engine.
+    final int offsetX;
+    final int offsetY;
+    private final Random rng;
+
+    private final boolean[][] blocked;
+    private final int[][] infection;
+    // Food growing on each farm, or -1 if there is no farm.
+    private final int[][] farmFood;
+    private final SimUnit[][] grid;
+    private final ArrayList<SimUnit> units = new ArrayList<SimUnit>();
+    private final int[][] shared = new int[2][SHARED_ARRAY_SIZE];
+    private final int[] food = {STARTING_FOOD, STARTING_FOOD};
+    // Scratch space for unitsWithin().
+    private SimUnit[] nearby = new SimUnit[64];
+    private int nextID = 1;
+    private volatile boolean over = false;
+
+    // Handed back to the match by a unit's thread when its turn is over.
+    final Semaphore turnDone = new Semaphore(0);
+
+    int round = 0;
+    Team winner = null;
+
+    // Statistics for each team.
+    final int[][] built = new int[2][UnitType.values().length];
+    final int[] farmsBuilt = new int[2];
+    final int[] timeouts = new int[2];
+    final int[] crashes = new int[2];
+    final int[] lost = new int[2];
+    RuntimeException firstCrash = null;
+
+    public Match(long seed, int width, int height, int maxRounds) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.maxRounds = maxRounds;
+        this.rng = new Random(seed);
+        this.offsetX = rng.nextInt(100);
+        this.offsetY = rng.nextInt(100);
+
+        blocked = new boolean[width][height];
+        infection = new int[width][height];
+        farmFood = new int[width][height];
+        grid = new SimUnit[width][height];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                farmFood[i][j] = -1;
+            }
+        }
+        generateTerrain();
+
+        spawn(Team.A, UnitType.BASE, offsetX + 4, offsetY + 4);
+        spawn(Team.B, UnitType.BASE, offsetX + width - 5, offsetY + height - 5);
+    }
+
+    // Scatter a few short walls over the map, keeping the corners with the
+    // bases clear.
+    private void generateTerrain() {
+        int walls = width * height / 60;
+        for (int w = 0; w < walls; w++) {
+            int x = rng.nextInt(width);
+            int y = rng.nextInt(height);
+            boolean horizontal = rng.nextBoolean();
+            int length = 2 + rng.nextInt(5);
+            for (int k = 0; k < length; k++) {
+                int wx = horizontal ? x + k : x;
+                int wy = horizontal ? y : y + k;
+                if (wx >= width || wy >= height)
+                    break;
+                if (nearCorner(wx, wy))
+                    continue;
+                blocked[wx][wy] = true;
+            }
+        }
+    }
+
+    private boolean nearCorner(int x, int y) {
+        return (x < 10 && y < 10) || (x >= width - 10 && y >= height - 10);
+    }
+
+    // Play the match to the end.
+    public void run() {
+        try {
+            while (winner == null && round < maxRounds) {
+                playRound();
+            }
+            if (winner == null)
+                winner = count(Team.A) >= count(Team.B) ? Team.A : Team.B;
+        }
+        finally {
+            over = true;
+            for (SimUnit unit : units) {
+                unit.stop();
+            }
+        }
+    }
+
+    void playRound() {
+        round++;
+
+        // Units spawned this round first act next round.
+        int n = units.size();
+        for (int i = 0; i < n; i++) {
+            SimUnit unit = units.get(i);
+            if (!unit.alive || unit.isZombie())
+                continue;
+            unit.takeTurn();
+            // Fumigators clear the infection around them as they go.
+            if (unit.alive && unit.type == UnitType.FUMIGATOR)
+                fumigate(unit.x, unit.y);
+            if (winner != null)
+                return;
+        }
+
+        if (round % ZOMBIE_INTERVAL == 0)
+            spawnZombies(1 + round / 300);
+        for (int i = 0; i < units.size(); i++) {
+            SimUnit unit = units.get(i);
+            if (unit.alive && unit.isZombie())
+                playZombie(unit);
+        }
+
+        updateSquares();
+    }
+
+    private void spawnZombies(int count) {
+        for (int k = 0; k < count; k++) {
+            for (int tries = 0; tries < 20; tries++) {
+                int x;
+                int y;
+                if (rng.nextBoolean()) {
+                    x = rng.nextInt(width);
+                    y = rng.nextBoolean() ? 0 : height - 1;
+                } else {
+                    x = rng.nextBoolean() ? 0 : width - 1;
+                    y = rng.nextInt(height);
+                }
+                if (blocked[x][y] || grid[x][y] != null)
+                    continue;
+                spawn(Team.ZOMBIE, UnitType.SOLDIER, offsetX + x, offsetY + y);
+                break;
+            }
+        }
+    }
+
+    // Zombies step towards the closest unit they can see, hurt any adjacent
+    // unit, and infect the squares around them.
+    private void playZombie(SimUnit zombie) {
+        SimUnit target = null;
+        int best = Integer.MAX_VALUE;
+        int found = collectWithin(zombie, VISION_RADIUS);
+        for (int i = 0; i < found; i++) {
+            SimUnit other = nearby[i];
+            if (other.isZombie())
+                continue;
+            int d = distanceSquared(zombie, other);
+            if (d < best) {
+                best = d;
+                target = other;
+            }
+        }
+
+        int dx;
+        int dy;
+        if (target != null) {
+            dx = Integer.signum(target.x - zombie.x);
+            dy = Integer.signum(target.y - zombie.y);
+        } else {
+            dx = rng.nextInt(3) - 1;
+            dy = rng.nextInt(3) - 1;
+        }
+        int nx = zombie.x + dx;
+        int ny = zombie.y + dy;
+        if ((dx != 0 || dy != 0) && isPassable(nx, ny) && unitAt(nx, ny) == null)
+            moveUnit(zombie, nx, ny);
+
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                int x = zombie.x + i;
+                int y = zombie.y + j;
+                if (!inMap(x, y))
+                    continue;
+                int level = (i == 0 && j == 0) ? ZOMBIE_INFECTION : NEARBY_INFECTION;
+                int[] column = infection[x - offsetX];
+                column[y - offsetY] = Math.max(column[y - offsetY], level);
+                SimUnit victim = unitAt(x, y);
+                if (victim != null && !victim.isZombie() && !victim.type.isStructure())
+                    damage(victim, ZOMBIE_DAMAGE);
+            }
+        }
+    }
+
+    // Infection hurts units standing in it and wears off over time, farms
+    // grow, and each team gets its base income.
+    private void updateSquares() {
+        food[0] += BASE_INCOME;
+        food[1] += BASE_INCOME;
+        for (int i = 0; i < units.size(); i++) {
+            SimUnit unit = units.get(i);
+            if (!unit.alive || unit.isZombie() || unit.type.isStructure())
+                continue;
+            if (infectionAt(unit.x, unit.y) > 0)
+                damage(unit, INFECTION_DAMAGE);
+        }
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (infection[i][j] > 0)
+                    infection[i][j]--;
+                if (farmFood[i][j] >= 0 && farmFood[i][j] < FARM_CAPACITY)
+                    farmFood[i][j]++;
+            }
+        }
+    }
+
+    private void fumigate(int x, int y) {
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (inMap(x + i, y + j))
+                    infection[x + i - offsetX][y + j - offsetY] = 0;
+            }
+        }
+    }
+
+    // Map queries, all in the coordinates units see.
+
+    boolean inMap(int x, int y) {
+        return x >= offsetX && y >= offsetY && x < offsetX + width && y < offsetY + height;
+    }
+
+    boolean isPassable(int x, int y) {
+        return inMap(x, y) && !blocked[x - offsetX][y - offsetY];
+    }
+
+    int infectionAt(int x, int y) {
+        return inMap(x, y) ? infection[x - offsetX][y - offsetY] : 0;
+    }
+
+    SimUnit unitAt(int x, int y) {
+        return inMap(x, y) ? grid[x - offsetX][y - offsetY] : null;
+    }
+
+    boolean hasFarm(int x, int y) {
+        return inMap(x, y) && farmFood[x - offsetX][y - offsetY] >= 0;
+    }
+
+    boolean isOver() {
+        return over;
+    }
+
+    int[] sharedArray(Team team) {
+        return shared[teamIndex(team)];
+    }
+
+    int food(Team team) {
+        return food[teamIndex(team)];
+    }
+
+    void addFood(Team team, int amount) {
+        food[teamIndex(team)] += amount;
+    }
+
+    private static int teamIndex(Team team) {
+        return team == Team.A ? 0 : 1;
+    }
+
+    private static int distanceSquared(SimUnit a, SimUnit b) {
+        return (a.x - b.x) * (a.x - b.x) + (a.y - b.y) * (a.y - b.y);
+    }
+
+    // Fill nearby with the live units within radiusSquared of the given
+    // unit, other than itself, and return how many there are.
+    private int collectWithin(SimUnit unit, int radiusSquared) {
+        int count = 0;
+        for (int i = 0; i < units.size(); i++) {
+            SimUnit other = units.get(i);
+            if (!other.alive || other == unit || distanceSquared(unit, other) > radiusSquared)
+                continue;
+            if (count == nearby.length) {
+                SimUnit[] bigger = new SimUnit[nearby.length * 2];
+                System.arraycopy(nearby, 0, bigger, 0, nearby.length);
+                nearby = bigger;
+            }
+            nearby[count++] = other;
+        }
+        if (count < nearby.length)
+            nearby[count] = null;
+        return count;
+    }
+
+    // The live units within radiusSquared of the given unit, followed by a
+    // null if the array isn't full. The array is reused by the next call.
+    SimUnit[] unitsWithin(SimUnit unit, int radiusSquared) {
+        collectWithin(unit, radiusSquared);
+        return nearby;
+    }
+
+    // The total food on farms adjacent to the given square.
+    int adjacentFood(int x, int y) {
+        int total = 0;
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (hasFarm(x + i, y + j))
+                    total += farmFood[x + i - offsetX][y + j - offsetY];
+            }
+        }
+        return total;
+    }
+
+    // Take up to amount food from the farms adjacent to the given square.
+    int takeAdjacentFood(int x, int y, int amount) {
+        int taken = 0;
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (!hasFarm(x + i, y + j))
+                    continue;
+                int[] column = farmFood[x + i - offsetX];
+                int take = Math.min(amount - taken, column[y + j - offsetY]);
+                column[y + j - offsetY] -= take;
+                taken += take;
+            }
+        }
+        return taken;
+    }
+
+    // Whether the worker is next to its team's base or a market.
+    boolean isNextToDepot(SimUnit worker) {
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                SimUnit other = unitAt(worker.x + i, worker.y + j);
+                if (other != null && other.team == worker.team &&
+                        (other.type == UnitType.BASE || other.type == UnitType.MARKET))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // Game actions.
+
+    SimUnit spawn(Team team, UnitType type, int x, int y) {
+        SimUnit unit = new SimUnit(this, nextID++, team, type, x, y, health(team, type));
+        units.add(unit);
+        grid[x - offsetX][y - offsetY] = unit;
+        if (team != Team.ZOMBIE) {
+            food[teamIndex(team)] -= round == 0 ? 0 : cost(type);
+            built[teamIndex(team)][type.ordinal()]++;
+        }
+        return unit;
+    }
+
+    void buildFarm(Team team, int x, int y) {
+        food[teamIndex(team)] -= FARM_COST;
+        farmFood[x - offsetX][y - offsetY] = 0;
+        farmsBuilt[teamIndex(team)]++;
+    }
+
+    void moveUnit(SimUnit unit, int x, int y) {
+        grid[unit.x - offsetX][unit.y - offsetY] = null;
+        unit.x = x;
+        unit.y = y;
+        grid[x - offsetX][y - offsetY] = unit;
+    }
+
+    void damage(SimUnit unit, int amount) {
+        unit.health -= amount;
+        if (unit.health <= 0)
+            kill(unit);
+    }
+
+    private void kill(SimUnit unit) {
+        if (!unit.alive)
+            return;
+        unit.alive = false;
+        grid[unit.x - offsetX][unit.y - offsetY] = null;
+        if (unit.isZombie())
+            return;
+        lost[teamIndex(unit.team)]++;
+        if (unit.type == UnitType.BASE)
+            winner = unit.team.getOpponent();
+        // The unit's thread stays parked until the match is over, when run()
+        // unwinds every thread at once.
+    }
+
+    void recordTimeout(SimUnit unit) {
+        timeouts[teamIndex(unit.team)]++;
+    }
+
+    void recordCrash(SimUnit unit, RuntimeException e) {
+        crashes[teamIndex(unit.team)]++;
+        if (firstCrash == null)
+            firstCrash = e;
+        kill(unit);
+    }
+
+    private int count(Team team) {
+        int total = 0;
+        for (SimUnit unit : units) {
+            if (unit.alive && unit.team == team)
+                total++;
+        }
+        return total;
+    }
+
+    // Unit stats.
+
+    static boolean canProduce(UnitType producer, UnitType type) {
+        switch (producer) {
+            case BASE:
+            case MARKET:
+                return type == UnitType.ESSENTIAL_WORKER || type == UnitType.FUMIGATOR;
+            case BARRACKS:
+                return type == UnitType.SOLDIER;
+            case LABORATORY:
+                return type == UnitType.INFECTER;
+            case ESSENTIAL_WORKER:
+                return type.isStructure() && type != UnitType.BASE;
+            default:
+                return false;
+        }
+    }
+
+    static int cost(UnitType type) {
+        switch (type) {
+            case BARRACKS:
+            case MARKET:
+            case LABORATORY:
+            case HOSPITAL:
+                return 50;
+            default:
+                return 20;
+        }
+    }
+
+    static int health(Team team, UnitType type) {
+        if (team == Team.ZOMBIE)
+            return 30;
+        switch (type) {
+            case BASE:
+                return 500;
+            case SOLDIER:
+                return 40;
+            case INFECTER:
+                return 30;
+            default:
+                return type.isStructure() ? 100 : 20;
+        }
+    }
+
+    static int attackRange(UnitType type) {
+        if (type == UnitType.SOLDIER)
+            return 13;
+        if (type == UnitType.INFECTER)
+            return 5;
+        return 0;
+    }
+
+    static int attackDamage(UnitType type) {
+        return type == UnitType.SOLDIER ? 10 : 5;
+    }
+
+    // A one line summary of the result.
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("seed=").append(seed);
+        sb.append(" rounds=").append(round);
+        sb.append(" winner=").append(winner);
+        for (int t = 0; t < 2; t++) {
+            sb.append(t == 0 ? " | A" : " | B");
+            sb.append(" food=").append(food[t]);
+            sb.append(" workers=").append(built[t][UnitType.ESSENTIAL_WORKER.ordinal()]);
+            sb.append(" soldiers=").append(built[t][UnitType.SOLDIER.ordinal()]);
+            sb.append(" fumigators=").append(built[t][UnitType.FUMIGATOR.ordinal()]);
+            sb.append(" barracks=").append(built[t][UnitType.BARRACKS.ordinal()]);
+            sb.append(" farms=").append(farmsBuilt[t]);
+            sb.append(" lost=").append(lost[t]);
+            sb.append(" timeouts=").append(timeouts[t]);
+            sb.append(" crashes=").append(crashes[t]);
+        }
+        return sb.toString();
+    }
+}
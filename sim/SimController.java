@@ -0,0 +1,278 @@
+package ratioplayer.sim;
+
+import aic2020.user.*;
+
+/**
+ * The UnitController handed to each simulated unit. It implements the parts
+ * of the controller which the player uses, against the simplified rules in
+ * Match.
+ *
+ * Energy is accounted per controller call rather than per bytecode: each call
+ * charges a fixed cost (plus a little for every unit a sense returns). Once a
+ * unit has used up its energy for the turn, its next call ends its turn on
+ * the spot, and the unit carries on from there next turn, as it would in the
+ * real engine.
+ */
+class SimController implements UnitController {
+
+    static final int ENERGY_PER_TURN = 10000;
+
+    static final int READ_COST = 2;
+    static final int WRITE_COST = 2;
+    static final int CHECK_COST = 5;
+    static final int ACTION_COST = 20;
+    static final int SENSE_COST = 50;
+    static final int SENSE_UNIT_COST = 2;
+
+    private final Match match;
+    private final SimUnit unit;
+
+    SimController(Match match, SimUnit unit) {
+        this.match = match;
+        this.unit = unit;
+    }
+
+    private void charge(int cost) {
+        unit.energyUsed += cost;
+        if (unit.energyUsed > ENERGY_PER_TURN) {
+            match.recordTimeout(unit);
+            unit.endTurn();
+        }
+    }
+
+    private static void fail(String action) {
+        throw new IllegalStateException("Cannot " + action);
+    }
+
+    public UnitInfo getInfo() {
+        charge(CHECK_COST);
+        return unit.info();
+    }
+
+    public UnitType getType() {
+        return unit.type;
+    }
+
+    public Team getTeam() {
+        return unit.team;
+    }
+
+    public Location getLocation() {
+        charge(1);
+        return unit.location();
+    }
+
+    public int getRound() {
+        return match.round;
+    }
+
+    public int read(int index) {
+        charge(READ_COST);
+        return match.sharedArray(unit.team)[index];
+    }
+
+    public void write(int index, int value) {
+        charge(WRITE_COST);
+        match.sharedArray(unit.team)[index] = value;
+    }
+
+    public void yield() {
+        unit.endTurn();
+    }
+
+    public int getEnergyLeft() {
+        charge(1);
+        return Math.max(0, ENERGY_PER_TURN - unit.energyUsed);
+    }
+
+    public int getEnergyUsed() {
+        charge(1);
+        return unit.energyUsed;
+    }
+
+    // Return the units in vision (and within radiusSquared) for which
+    // matches() holds.
+    private UnitInfo[] sense(int radiusSquared, Team team, boolean enemies, boolean zombies) {
+        charge(SENSE_COST);
+        SimUnit[] found = match.unitsWithin(unit, Math.min(radiusSquared, Match.VISION_RADIUS));
+        int count = 0;
+        for (SimUnit other : found) {
+            if (other == null)
+                break;
+            if (matches(other, team, enemies, zombies))
+                count++;
+        }
+        UnitInfo[] result = new UnitInfo[count];
+        int i = 0;
+        for (SimUnit other : found) {
+            if (other == null)
+                break;
+            if (matches(other, team, enemies, zombies))
+                result[i++] = other.info();
+        }
+        charge(SENSE_UNIT_COST * count);
+        return result;
+    }
+
+    // With enemies set, we want units which are not on the given team
+    // (zombies only if asked for); otherwise we want units on the team.
+    private static boolean matches(SimUnit other, Team team, boolean enemies, boolean zombies) {
+        if (!enemies)
+            return other.team == team;
+        if (other.team == Team.ZOMBIE)
+            return zombies;
+        return other.team != team;
+    }
+
+    public UnitInfo[] senseUnits(Team team, boolean enemies, boolean zombies) {
+        return sense(Match.VISION_RADIUS, team, enemies, zombies);
+    }
+
+    public UnitInfo[] senseUnits(int radiusSquared, Team team) {
+        return sense(radiusSquared, team, false, false);
+    }
+
+    public UnitInfo[] senseUnits(Team team) {
+        return sense(Match.VISION_RADIUS, team, false, false);
+    }
+
+    public boolean canSenseLocation(Location loc) {
+        charge(CHECK_COST);
+        return unit.location().distanceSquared(loc) <= Match.VISION_RADIUS;
+    }
+
+    public boolean isOutOfMap(Location loc) {
+        charge(CHECK_COST);
+        return !match.inMap(loc.x, loc.y);
+    }
+
+    public boolean isAccessible(Location loc) {
+        charge(CHECK_COST);
+        return match.isPassable(loc.x, loc.y);
+    }
+
+    public boolean isStronglyInfected(Location loc) {
+        charge(CHECK_COST);
+        return match.infectionAt(loc.x, loc.y) >= Match.STRONG_INFECTION;
+    }
+
+    public UnitInfo senseUnitAtLocation(Location loc) {
+        charge(CHECK_COST);
+        if (unit.location().distanceSquared(loc) > Match.VISION_RADIUS)
+            return null;
+        SimUnit other = match.unitAt(loc.x, loc.y);
+        return other == null ? null : other.info();
+    }
+
+    public FarmInfo senseFarmAtLocation(Location loc) {
+        charge(CHECK_COST);
+        if (unit.location().distanceSquared(loc) > Match.VISION_RADIUS)
+            return null;
+        return match.hasFarm(loc.x, loc.y) ? new FarmInfo(loc) : null;
+    }
+
+    // Return whether the square in the given direction is free to be moved,
+    // spawned, or built on.
+    private boolean isFree(Direction dir) {
+        if (dir == Direction.ZERO)
+            return false;
+        Location loc = unit.location().add(dir);
+        return match.isPassable(loc.x, loc.y) && match.unitAt(loc.x, loc.y) == null;
+    }
+
+    public boolean canSpawn(UnitType type, Direction dir) {
+        charge(CHECK_COST);
+        return !unit.spawned && Match.canProduce(unit.type, type) &&
+                match.food(unit.team) >= Match.cost(type) && isFree(dir);
+    }
+
+    public void spawn(UnitType type, Direction dir) {
+        if (!canSpawn(type, dir))
+            fail("spawn " + type);
+        charge(ACTION_COST);
+        unit.spawned = true;
+        Location loc = unit.location().add(dir);
+        match.spawn(unit.team, type, loc.x, loc.y);
+    }
+
+    public boolean canBuildFarm(Direction dir) {
+        charge(CHECK_COST);
+        if (unit.spawned || unit.type != UnitType.ESSENTIAL_WORKER)
+            return false;
+        if (match.food(unit.team) < Match.FARM_COST || !isFree(dir))
+            return false;
+        Location loc = unit.location().add(dir);
+        return !match.hasFarm(loc.x, loc.y);
+    }
+
+    public void buildFarm(Direction dir) {
+        if (!canBuildFarm(dir))
+            fail("build farm");
+        charge(ACTION_COST);
+        unit.spawned = true;
+        Location loc = unit.location().add(dir);
+        match.buildFarm(unit.team, loc.x, loc.y);
+    }
+
+    public boolean canGatherFood() {
+        charge(CHECK_COST);
+        return unit.type == UnitType.ESSENTIAL_WORKER && unit.carried < Match.CARRY_CAPACITY &&
+                match.adjacentFood(unit.x, unit.y) > 0;
+    }
+
+    public void gatherFood() {
+        if (!canGatherFood())
+            fail("gather food");
+        charge(ACTION_COST);
+        unit.carried += match.takeAdjacentFood(unit.x, unit.y, Match.CARRY_CAPACITY - unit.carried);
+    }
+
+    public boolean canDeposit() {
+        charge(CHECK_COST);
+        return unit.type == UnitType.ESSENTIAL_WORKER && unit.carried > 0 &&
+                match.isNextToDepot(unit);
+    }
+
+    public void deposit() {
+        if (!canDeposit())
+            fail("deposit");
+        charge(ACTION_COST);
+        match.addFood(unit.team, unit.carried);
+        unit.carried = 0;
+    }
+
+    public boolean canMove() {
+        charge(CHECK_COST);
+        return !unit.moved && !unit.type.isStructure();
+    }
+
+    public boolean canMove(Direction dir) {
+        return canMove() && isFree(dir);
+    }
+
+    public void move(Direction dir) {
+        if (!canMove(dir))
+            fail("move " + dir);
+        charge(ACTION_COST);
+        unit.moved = true;
+        Location loc = unit.location().add(dir);
+        match.moveUnit(unit, loc.x, loc.y);
+    }
+
+    public boolean canAttack(Location loc) {
+        charge(CHECK_COST);
+        int range = Match.attackRange(unit.type);
+        if (unit.attacked || range == 0 || unit.location().distanceSquared(loc) > range)
+            return false;
+        SimUnit target = match.unitAt(loc.x, loc.y);
+        return target != null && target.team != unit.team;
+    }
+
+    public void attack(Location loc) {
+        if (!canAttack(loc))
+            fail("attack " + loc.x + "," + loc.y);
+        charge(ACTION_COST);
+        unit.attacked = true;
+        match.damage(match.unitAt(loc.x, loc.y), Match.attackDamage(unit.type));
+    }
+}
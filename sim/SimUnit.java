@@ -0,0 +1,126 @@
+package ratioplayer.sim;
+
+import aic2020.user.*;
+import ratioplayer.UnitPlayer;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A single unit in a simulated match. Every unit belonging to a team runs
+ * UnitPlayer.run() in a thread of its own, just as it would in the real
+ * engine, but only one of these threads ever runs at a time: the match hands
+ * a turn to the unit and waits until it yields (or runs out of energy)
+ * before carrying on. Zombies have no thread; the match moves them itself.
+ */
+class SimUnit implements Runnable {
+
+    // Thrown inside a unit's thread to unwind it once the unit is dead or
+    // the match is over.
+    static class Stop extends Error {
+        private static final long serialVersionUID = 1L;
+
+        Stop() {
+            super(null, null, false, false);
+        }
+    }
+
+    final Match match;
+    final int id;
+    final Team team;
+    final UnitType type;
+    int x;
+    int y;
+    int health;
+    boolean alive = true;
+
+    // What the unit has already done this turn.
+    boolean moved;
+    boolean attacked;
+    boolean spawned;
+
+    // Food carried by a worker.
+    int carried;
+
+    // Energy used this turn.
+    int energyUsed;
+
+    final SimController controller;
+    private Thread thread;
+    private final Semaphore go = new Semaphore(0);
+    // Set when we unwind the thread ourselves, rather than because a turn
+    // ended, so that the match isn't told a turn finished.
+    private volatile boolean stopping = false;
+
+    SimUnit(Match match, int id, Team team, UnitType type, int x, int y, int health) {
+        this.match = match;
+        this.id = id;
+        this.team = team;
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.health = health;
+        this.controller = team == Team.ZOMBIE ? null : new SimController(match, this);
+    }
+
+    boolean isZombie() {
+        return team == Team.ZOMBIE;
+    }
+
+    // Run one turn of this unit, returning once it yields.
+    void takeTurn() {
+        moved = false;
+        attacked = false;
+        spawned = false;
+        energyUsed = 0;
+        if (thread == null) {
+            thread = new Thread(this, "unit-" + id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        go.release();
+        match.turnDone.acquireUninterruptibly();
+    }
+
+    // Called from the unit's own thread when its turn is over, whether it
+    // yielded or ran out of energy. Blocks until its next turn.
+    void endTurn() {
+        match.turnDone.release();
+        go.acquireUninterruptibly();
+        if (!alive || match.isOver())
+            throw new Stop();
+    }
+
+    // Unwind the unit's thread, if it has one.
+    void stop() {
+        if (thread == null)
+            return;
+        stopping = true;
+        go.release();
+    }
+
+    public void run() {
+        go.acquireUninterruptibly();
+        try {
+            if (alive && !match.isOver())
+                new UnitPlayer().run(controller);
+        }
+        catch (Stop e) {
+            // The unit died or the match ended.
+        }
+        catch (RuntimeException e) {
+            match.recordCrash(this, e);
+        }
+        finally {
+            if (!stopping)
+                match.turnDone.release();
+        }
+    }
+
+    Location location() {
+        return new Location(x, y);
+    }
+
+    UnitInfo info() {
+        return new UnitInfo(id, team, type, location());
+    }
+}